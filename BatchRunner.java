@@ -0,0 +1,312 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+public class BatchRunner {
+	/**
+	 * Runs one algorithm without any interaction, as configured by a RunConfig, and writes a single result record.
+	 * The record is one line of JSON with the objective, the bounds, the iterations and the time spent in every phase,
+	 * appended to the output file or printed as the last line on standard out.
+	 */
+
+	private final RunConfig config;
+	private final Map<String, Object> record; // result fields in the order they are written
+	private PrintWriter progress;		// the records of the iterations, null without them
+
+	public BatchRunner(RunConfig config) {
+		this.config = config;
+		this.record = new LinkedHashMap<String, Object>();
+	}
+
+	public void run() throws IOException, IloException {
+		long start = System.nanoTime();
+		record.put("algorithm", config.getAlgorithm());
+		record.put("formulation", config.getFormulation().name().toLowerCase());
+		record.put("G", config.getG());
+		record.put("T", config.getT());
+		record.put("dispatch", config.isDispatch());
+		record.put("pareto", config.isPareto());
+		record.put("stabilization", config.getStabilization());
+		record.put("pipeline", config.getPipeline());
+		record.put("pool", config.getPoolSolutions());
+		record.put("multiCut", config.isMultiCut());
+		record.put("heuristic", config.isHeuristic());
+
+		GeneratorProblem gcp;
+		if (config.getSnapshot() != null) {
+			record.put("snapshot", config.getSnapshot());
+			gcp = GeneratorProblem.readSnapshot(config.getSnapshot());
+			record.put("G", gcp.getnGenerators()); // the size of the snapshot rather than of the options
+			record.put("T", gcp.getT());
+		} else if (config.getSeed() != null) {
+			record.put("seed", config.getSeed());
+			gcp = new InstanceGenerator(config.getSeed()).problem(config.getG(), config.getT(), config.getS(), config.getShed());
+		} else {
+			gcp = new GeneratorProblem(config.getG(), config.getLoadFile(), config.getGeneratorFile(),
+					config.getT(), config.getShed(), config.getScenarioFile(), config.getColumns(), null);
+		}
+		record.put("scenarios", gcp.getnScenarios());
+		record.put("loadSeconds", seconds(start));
+		if (config.getSaveSnapshot() != null) {
+			gcp.writeSnapshot(config.getSaveSnapshot());
+		}
+
+		if (config.getProgress() != null) {
+			progress = new PrintWriter(new FileWriter(config.getProgress(), true));
+		}
+		try {
+			switch (config.getAlgorithm()) {
+			case "direct":
+				runDirect(gcp);
+				break;
+			case "extended":
+				runExtended(gcp);
+				break;
+			default:
+				runClassic(gcp);
+			}
+		} finally {
+			if (progress != null) {
+				progress.close();
+			}
+		}
+		record.put("totalSeconds", seconds(start));
+		write();
+	}
+
+	private void runDirect(GeneratorProblem gcp) throws IloException {
+		if (gcp.getnScenarios() > 1) {
+			throw new IllegalArgumentException("The direct model only solves the deterministic problem");
+		}
+		resetPeakHeap();
+		long build = System.nanoTime();
+		DirectModel model = new DirectModel(gcp, config.getFormulation());
+		if (config.getOutput() == null) {
+			model.quiet();
+		}
+		model.setThreads(config.getThreads());
+		model.setTimeLimit(config.getTimeLimit());
+		model.setMIPGap(config.getGap());
+		record.put("buildSeconds", seconds(build));
+		record.put("buildPeakHeapMB", peakHeap());
+
+		long solve = System.nanoTime();
+		model.solve();
+		record.put("solveSeconds", seconds(solve));
+		record.put("status", String.valueOf(model.getStatus()));
+		if (model.getStatus() == IloCplex.Status.Optimal || model.getStatus() == IloCplex.Status.Feasible) {
+			record.put("objective", model.getObjValue());
+			record.put("lowerBound", model.getBestObjValue());
+			record.put("upperBound", model.getObjValue());
+		}
+		model.end();
+	}
+
+	/**
+	 * The classic Bender's Decomposition, stopping at convergence, at the gap or when the time limit is reached
+	 */
+	private void runClassic(GeneratorProblem gcp) throws IloException {
+		resetPeakHeap();
+		long build = System.nanoTime();
+		BendersSolver bd = new BendersSolver(gcp, config.isDispatch(), config.isMultiCut(), config.getFormulation());
+		bd.setWorkers(config.getWorkers());
+		bd.setCacheSize(config.getCacheSize());
+		bd.setFeasibilityCheck(!config.isLpFeasibility());
+		bd.setMeritOrderCuts(!config.isLpCuts());
+		bd.setHeuristic(config.isHeuristic());
+		bd.setRootRounds(config.getRootRounds());
+		bd.setThreads(config.getThreads());
+		bd.setGap(config.getGap());
+		bd.setTolerance(config.getTolerance());
+		bd.setTimeLimit(config.getTimeLimit());
+		bd.setMaxIterations(config.getMaxIterations());
+		bd.setParetoCuts(config.isPareto());
+		bd.setStabilization(config.getStabilization());
+		bd.setPipeline(config.getPipeline());
+		bd.setPoolSolutions(config.getPoolSolutions());
+		bd.setMaxCutAge(config.getCutAge());
+		bd.setListener(progress());
+		record.put("buildSeconds", seconds(build));
+		record.put("buildPeakHeapMB", peakHeap());
+
+		long solve = System.nanoTime();
+		BendersSolver.Status status = bd.solve();
+		record.put("solveSeconds", seconds(solve));
+		record.put("masterSeconds", bd.getMasterSeconds());
+		record.put("feasibilitySeconds", bd.getFeasibilitySeconds());
+		record.put("optimalitySeconds", bd.getOptimalitySeconds());
+		record.put("cutSeconds", bd.getCutSeconds());
+		record.put("status", status.toString().toLowerCase());
+		record.put("rootRounds", bd.getRelaxationRounds());
+		record.put("rootBound", bd.getRelaxationBound());
+		record.put("heuristicObjective", bd.getHeuristicObjValue());
+		record.put("iterations", bd.getIterations());
+		record.put("stabilizedCuts", bd.getStabilizedCuts());
+		record.put("restarts", bd.getRestarts());
+		record.put("duplicateStop", bd.isDuplicateStop());
+		record.put("poolSolutions", bd.getPricedPoolSolutions());
+		record.put("objective", bd.getUpperBound());
+		record.put("lowerBound", bd.getLowerBound());
+		record.put("upperBound", bd.getUpperBound());
+		record.put("gap", bd.getGap());
+		record.put("feasibilityLPs", bd.getFeasibilityLPs());
+		record.put("meritOrderCuts", bd.getMeritOrderCuts());
+		record.put("cacheHits", bd.getCacheHits());
+		record.put("cacheMisses", bd.getCacheMisses());
+		record.put("cuts", bd.getMasterProblem().getCuts());
+		record.put("activeCuts", bd.getMasterProblem().getActiveCuts());
+		record.put("duplicateCuts", bd.getMasterProblem().getDuplicateCuts());
+		record.put("purgedCuts", bd.getMasterProblem().getPurgedCuts());
+		record.put("reactivatedCuts", bd.getMasterProblem().getReactivatedCuts());
+		bd.end();
+	}
+
+	private void runExtended(GeneratorProblem gcp) throws IloException {
+		resetPeakHeap();
+		long build = System.nanoTime();
+		// With a first phase the master is taken from a classic solver, which finds the root cuts for it
+		BendersSolver root = null;
+		MasterProblem mp;
+		if (config.getRootRounds() > 0) {
+			root = new BendersSolver(gcp, config.isDispatch(), config.isMultiCut(), config.getFormulation());
+			root.setWorkers(config.getWorkers());
+			root.setTolerance(config.getTolerance());
+			root.setTimeLimit(config.getTimeLimit());
+			root.setRootRounds(config.getRootRounds());
+			mp = root.getMasterProblem();
+		} else {
+			mp = new MasterProblem(gcp, config.isMultiCut(), config.getFormulation());
+		}
+		mp.setDispatchSolver(config.isDispatch());
+		mp.setThreads(config.getThreads());
+		mp.setTimeLimit(config.getTimeLimit());
+		mp.setMIPGap(config.getGap());
+		mp.setTolerance(config.getTolerance());
+		mp.setCacheSize(config.getCacheSize());
+		mp.setFeasibilityCheck(!config.isLpFeasibility());
+		mp.setMeritOrderCuts(!config.isLpCuts());
+		mp.setHeuristic(config.isHeuristic());
+		mp.setListener(progress());
+		record.put("buildSeconds", seconds(build));
+		record.put("buildPeakHeapMB", peakHeap());
+
+		long solve = System.nanoTime();
+		if (root != null) {
+			record.put("rootRounds", root.solveRelaxation());
+			record.put("rootBound", root.getRelaxationBound());
+			mp.setTimeLimit(config.getTimeLimit() - seconds(solve));
+		}
+		mp.solveBB();
+		record.put("solveSeconds", seconds(solve));
+		record.put("status", String.valueOf(mp.getStatus()));
+		if (mp.getStatus() == IloCplex.Status.Optimal || mp.getStatus() == IloCplex.Status.Feasible) {
+			record.put("objective", mp.getObjValue());
+			record.put("lowerBound", mp.getBestObjValue());
+			record.put("upperBound", mp.getObjValue());
+		}
+		record.put("heuristicObjective", mp.getHeuristicObjValue());
+		record.put("heuristicSolutions", mp.getHeuristicSolutions());
+		record.put("poolSize", mp.getPoolSize());
+		record.put("poolReuses", mp.getPoolReuses());
+		record.put("cacheHits", mp.getCacheHits());
+		record.put("cacheMisses", mp.getCacheMisses());
+		if (root != null) {
+			root.end();
+		} else {
+			mp.end();
+		}
+	}
+
+	/**
+	 * @return a listener appending every iteration to the progress file as one line of JSON, null without the file
+	 */
+	private BendersListener progress() {
+		if (progress == null) {
+			return null;
+		}
+		return iteration -> {
+			Map<String, Object> fields = new LinkedHashMap<String, Object>();
+			fields.put("algorithm", config.getAlgorithm());
+			fields.put("iteration", iteration.getIteration());
+			fields.put("seconds", iteration.getSeconds());
+			fields.put("lowerBound", iteration.getLowerBound());
+			fields.put("upperBound", iteration.getUpperBound());
+			fields.put("gap", iteration.getGap());
+			fields.put("cuts", iteration.getCuts());
+			fields.put("rows", iteration.getRows());
+			fields.put("nodes", iteration.getNodes());
+			progress.println(toJson(fields));
+		};
+	}
+
+	private static double seconds(long since) {
+		return (System.nanoTime() - since)/1e9;
+	}
+
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * @return the peak Java heap since resetPeakHeap in MB, summed over the pools. The models built by CPLEX live
+	 * in native memory and are not part of it
+	 */
+	private static double peakHeap() {
+		long bytes = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				bytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return bytes/(1024.0*1024.0);
+	}
+
+	/**
+	 * @return the record as one line of JSON
+	 */
+	public String toJson() {
+		return toJson(record);
+	}
+
+	private static String toJson(Map<String, Object> fields) {
+		StringBuilder json = new StringBuilder("{");
+		for (Map.Entry<String, Object> field : fields.entrySet()) {
+			if (json.length() > 1) {
+				json.append(", ");
+			}
+			json.append('"').append(field.getKey()).append("\": ");
+			Object value = field.getValue();
+			if (value instanceof String) {
+				json.append('"').append(((String) value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+			} else if (value instanceof Double && (((Double) value).isInfinite() || ((Double) value).isNaN())) {
+				json.append("null");
+			} else {
+				json.append(value);
+			}
+		}
+		return json.append('}').toString();
+	}
+
+	private void write() throws IOException {
+		if (config.getOutput() == null) {
+			System.out.println(toJson());
+			return;
+		}
+		try (PrintWriter out = new PrintWriter(new FileWriter(config.getOutput(), true))) {
+			out.println(toJson());
+		}
+	}
+
+}
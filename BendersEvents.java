@@ -0,0 +1,147 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+public final class BendersEvents {
+	/**
+	 * The JDK Flight Recorder events of the Bender's Decomposition, one per phase: the master solves, the feasibility and
+	 * optimality subproblems, the extraction of their duals, every cut added to the master and every iteration.
+	 * They are only recorded while a recording with them enabled runs, e.g. with -XX:StartFlightRecording, and cost next
+	 * to nothing otherwise. The duration of an event is the time spent in its phase.
+	 */
+
+	private BendersEvents() {
+	}
+
+	@Name("benders.MasterSolve")
+	@Label("Master Solve")
+	@Category({"Benders", "Master"})
+	@Description("A solve of the master problem, the whole branch and bound of the extended BD")
+	@StackTrace(false)
+	static class MasterSolve extends Event {
+		@Label("Relaxed")
+		boolean relaxed;
+
+		@Label("Extended")
+		@Description("The solve of the extended BD, with the cuts added by the callback")
+		boolean extended;
+
+		@Label("Status")
+		String status;
+
+		@Label("Objective Value")
+		double objValue;
+
+		@Label("Nodes")
+		long nodes;
+
+		@Label("Rows")
+		int rows;
+	}
+
+	@Name("benders.FeasibilityLP")
+	@Label("Feasibility LP")
+	@Category({"Benders", "Subproblem"})
+	@StackTrace(false)
+	static class FeasibilityLP extends Event {
+		@Label("Dispatch Solver")
+		boolean dispatch;
+
+		@Label("Objective Value")
+		@Description("The shedding and surplus needed for a feasible dispatch, positive if the commitment is infeasible")
+		double objValue;
+	}
+
+	@Name("benders.OptimalityLP")
+	@Label("Optimality LP")
+	@Category({"Benders", "Subproblem"})
+	@StackTrace(false)
+	static class OptimalityLP extends Event {
+		@Label("Dispatch Solver")
+		boolean dispatch;
+
+		@Label("Objective Value")
+		double objValue;
+	}
+
+	@Name("benders.DualExtraction")
+	@Label("Dual Extraction")
+	@Category({"Benders", "Subproblem"})
+	@StackTrace(false)
+	static class DualExtraction extends Event {
+		@Label("Feasibility")
+		boolean feasibility;
+
+		@Label("Duals")
+		int duals;
+	}
+
+	@Name("benders.CutAdd")
+	@Label("Cut Add")
+	@Category({"Benders", "Master"})
+	@StackTrace(false)
+	static class CutAdd extends Event {
+		@Label("Optimality")
+		boolean optimality;
+
+		@Label("Lazy")
+		@Description("Added by the callback of the extended BD")
+		boolean lazy;
+
+		@Label("Duplicate")
+		@Description("Already known, and put back if it was purged")
+		boolean duplicate;
+
+		@Label("Nonzeros")
+		int nonzeros;
+	}
+
+	@Name("benders.Iteration")
+	@Label("Iteration")
+	@Category({"Benders"})
+	@Description("The bounds after an iteration, as given to the BendersListener")
+	@StackTrace(false)
+	static class Iteration extends Event {
+		@Label("Iteration")
+		int iteration;
+
+		@Label("Lower Bound")
+		double lowerBound;
+
+		@Label("Upper Bound")
+		double upperBound;
+
+		@Label("Gap")
+		double gap;
+
+		@Label("Cuts")
+		int cuts;
+
+		@Label("Rows")
+		int rows;
+
+		@Label("Nodes")
+		long nodes;
+	}
+
+	/**
+	 * Records an iteration if the event is enabled
+	 */
+	static void iteration(BendersListener.Iteration iteration) {
+		Iteration event = new Iteration();
+		if (event.shouldCommit()) {
+			event.iteration = iteration.getIteration();
+			event.lowerBound = iteration.getLowerBound();
+			event.upperBound = iteration.getUpperBound();
+			event.gap = iteration.getGap();
+			event.cuts = iteration.getCuts();
+			event.rows = iteration.getRows();
+			event.nodes = iteration.getNodes();
+			event.commit();
+		}
+	}
+
+}
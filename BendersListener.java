@@ -0,0 +1,91 @@
+public interface BendersListener {
+	/**
+	 * Is told about the progress of a Bender's Decomposition after every iteration, e.g. to export it to monitoring.
+	 * The classic BD reports once per master solution it prices, the extended BD once per call of its callback.
+	 * The calls come one at a time, also from the CPLEX threads of the extended BD, and the search waits for them,
+	 * so the listener should return quickly.
+	 */
+
+	public void iteration(Iteration iteration);
+
+
+	/**
+	 * The state after an iteration
+	 */
+	public static final class Iteration {
+		private final int iteration;
+		private final double lowerBound;
+		private final double upperBound;
+		private final double gap;
+		private final int cuts;
+		private final int rows;
+		private final long nodes;
+		private final double seconds;
+
+		public Iteration(int iteration, double lowerBound, double upperBound, int cuts, int rows, long nodes, double seconds) {
+			this.iteration = iteration;
+			this.lowerBound = lowerBound;
+			this.upperBound = upperBound;
+			this.gap = upperBound == Double.POSITIVE_INFINITY ? Double.POSITIVE_INFINITY
+					: (upperBound - lowerBound)/Math.max(Math.abs(upperBound), 1e-10);
+			this.cuts = cuts;
+			this.rows = rows;
+			this.nodes = nodes;
+			this.seconds = seconds;
+		}
+
+		/**
+		 * @return the number of the iteration, from 1
+		 */
+		public int getIteration() {
+			return iteration;
+		}
+
+		public double getLowerBound() {
+			return lowerBound;
+		}
+
+		/**
+		 * @return the objective of the incumbent, infinite while there is none
+		 */
+		public double getUpperBound() {
+			return upperBound;
+		}
+
+		/**
+		 * @return the relative gap (UB-LB)/UB, infinite while there is no incumbent
+		 */
+		public double getGap() {
+			return gap;
+		}
+
+		/**
+		 * @return the number of cuts added to the master so far
+		 */
+		public int getCuts() {
+			return cuts;
+		}
+
+		/**
+		 * @return the number of rows of the master, i.e. its size
+		 */
+		public int getRows() {
+			return rows;
+		}
+
+		/**
+		 * @return the branch and bound nodes of the last master solve, or of the running one in the extended BD
+		 */
+		public long getNodes() {
+			return nodes;
+		}
+
+		/**
+		 * @return the time since the solve started
+		 */
+		public double getSeconds() {
+			return seconds;
+		}
+	}
+
+}
@@ -0,0 +1,1206 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+public class BendersSolver {
+	/**
+	 * The classic Bender's Decomposition: the master problem is solved to optimality, its solution is checked by the
+	 * feasibility and optimality subproblems and a cut is added, until the bounds meet.
+	 *
+	 * The master objective is a lower bound. Every feasible master solution gives an upper bound, its online and startup
+	 * costs plus the production cost from the optimality subproblem, and the best one is kept as the incumbent.
+	 * The loop stops when phi covers the production cost, when the relative gap between the bounds is small enough,
+	 * after a maximum number of iterations or when the time budget is used up.
+	 *
+	 * With Pareto cuts enabled the optimality cut is taken from the Magnanti-Wong problem, which picks among the
+	 * optimal duals of the degenerate dispatch LP the ones that are strongest at a core point of the master.
+	 * The core point starts in the middle of the unit cube and moves halfway towards every master solution.
+	 *
+	 * With stabilisation the cuts are separated in-out style at a point between the core point and the master solution,
+	 * which gives deeper cuts than the master solution itself while the master still jumps between far apart solutions.
+	 * When such a cut does not cut off the master solution, its plain cut is added instead and the weight of the core
+	 * point is halved, when it does the weight doubles again up to its setting.
+	 *
+	 * With several demand scenarios the upper bound takes the expected production cost, and the scenario subproblems
+	 * are solved concurrently on a fixed number of worker threads. Their cuts go to the master as one expected cut,
+	 * or as one cut per scenario in the multi-cut master.
+	 *
+	 * Pipelined, every incumbent CPLEX finds while it solves the master is priced on an evaluator thread at once, so the
+	 * subproblems are solved while the master is. Their cuts go to the master before its next solve, and once a batch of
+	 * incumbents is cut off the running solve is stopped and restarted with them. Everything that uses the subproblems
+	 * runs on the evaluator then, one task at a time, and the scenarios of every task on the worker threads.
+	 *
+	 * With a solution pool the best other solutions of every master solve are priced together with its optimum, every
+	 * pair of solution and scenario on its own worker with subproblems borrowed from the pool of the scenario, and their
+	 * violated cuts go to the master with the next batch.
+	 *
+	 * Optionally the priority list commitment is priced before the first master solve. It is the first incumbent and the
+	 * starting solution of the master, and its cuts are in the master from the start.
+	 *
+	 * Optionally a first phase iterates on the LP relaxation of the master, where every solve is cheap, and the
+	 * integer iterations start from all the cuts it found.
+	 */
+
+	public enum Status { OPTIMAL, GAP, ITERATION_LIMIT, TIME_LIMIT }
+
+	private static final int STALL_ROUNDS = 3;			// rounds without progress that end the LP relaxation phase
+	private static final double STALL_TOLERANCE = 1e-4;	// relative bound improvement that counts as progress
+	private static final double MIN_STABILIZATION = 0.01;	// weight of the core point below which separation stops
+
+	private final GeneratorProblem gcp;
+	private final MasterProblem mp;
+	private final SubProblem[] fsp;		// in S
+	private final SubProblem[] osp;		// in S
+	private final FeasibilityCheck[] check; // in S
+	private final MeritOrderCut[] merit;	// in S
+	private final boolean dispatch;
+	private SubproblemPool[] pools;		// in S, subproblems for pricing the solution pool, null without it
+	private OptimalityProblem[] pareto;	// CPLEX models of the Magnanti-Wong problem, null without Pareto cuts
+
+	private double gap = 0;				// relative gap at which to stop
+	private double tolerance = 1e-7;	// absolute tolerance of phi >= production cost
+	private int maxIterations = Integer.MAX_VALUE;
+	private double timeLimit = Double.POSITIVE_INFINITY; // in seconds
+	private boolean paretoCuts = false;
+	private double[][] core;			// core point of the Pareto cuts and the stabilisation
+	private double stabilization = 0;	// weight of the core point in the separation point, 0 separates at U
+	private double weight;				// current weight of the core point
+	private int workers = 0;			// threads solving the scenarios, 0 for one per core
+	private ExecutorService executor;	// null while the scenarios are solved on the calling thread
+	private SubproblemCache cache;		// subproblem results by commitment pattern
+	private int cacheSize = 1024;
+	private int rootRounds = 0;			// maximum rounds of the LP relaxation phase, 0 skips it
+	private boolean feasibilityCheck = true; // decide feasibility combinatorially before solving the feasibility LP
+	private boolean meritOrder = true;	// optimality cuts in closed form when the ramps do not couple the hours
+	private boolean heuristic = false;	// start from the priority list commitment
+	private int pipeline = 0;			// incumbents cut off after which the master is restarted, 0 does not pipeline
+	private int poolSolutions = 1;		// distinct master solutions priced per solve
+	private ExecutorService evaluator;	// single thread pricing the master incumbents while pipelined
+	private final Queue<Evaluation> evaluated = new ConcurrentLinkedQueue<Evaluation>(); // priced, cuts not yet added
+	private final Queue<Future<?>> pending = new ConcurrentLinkedQueue<Future<?>>();
+	private final Set<Commitment> submitted = ConcurrentHashMap.newKeySet(); // incumbents of the running master solve
+	private final AtomicInteger violatedIncumbents = new AtomicInteger();
+	private int generation;				// master solves started, guarded by violatedIncumbents like the count
+	private final AtomicBoolean stopped = new AtomicBoolean(); // the running master solve was aborted for new cuts
+
+	private double lowerBound = Double.NEGATIVE_INFINITY;
+	private double upperBound = Double.POSITIVE_INFINITY;
+	private Commitment incumbent;		// best first stage solution found
+	private int iterations;
+	private int stabilizedCuts;			// iterations whose cuts came from the separation point
+	private double heuristicObjValue = Double.POSITIVE_INFINITY; // objective of the priority list commitment
+	private int restarts;				// master solves stopped for new cuts
+	private boolean duplicateStop;		// the solve ended as the cuts of the master solution were in the master already
+	private int pricedPoolSolutions;	// solutions from the pool priced besides the master optimum
+	private int relaxationRounds;
+	private double relaxationBound = Double.NEGATIVE_INFINITY;
+	private long masterTime, cutTime;	// in nanoseconds
+	private final long[] feasibilityTime, optimalityTime; // in S, in nanoseconds
+	private final int[] feasibilityLPs;	// in S, feasibility subproblems the check could not avoid
+	private final int[] meritOrderCuts;	// in S, optimality cuts taken from the merit order
+	private BendersListener listener;	// told about every iteration, null for none
+
+	public BendersSolver(GeneratorProblem gcp, boolean dispatch) throws IloException {
+		this(gcp, dispatch, false);
+	}
+
+	/**
+	 * @param multiCut one phi and one optimality cut per scenario instead of a single cut on the expected production cost
+	 */
+	public BendersSolver(GeneratorProblem gcp, boolean dispatch, boolean multiCut) throws IloException {
+		this(gcp, dispatch, multiCut, MasterProblem.Formulation.CLASSIC);
+	}
+
+	/**
+	 * @param formulation of the minimum up and down times in the master
+	 */
+	public BendersSolver(GeneratorProblem gcp, boolean dispatch, boolean multiCut, MasterProblem.Formulation formulation) throws IloException {
+		this.gcp = gcp;
+		this.mp = new MasterProblem(gcp, multiCut, formulation);
+		this.dispatch = dispatch;
+		this.fsp = new SubProblem[gcp.getnScenarios()];
+		this.osp = new SubProblem[gcp.getnScenarios()];
+		this.check = new FeasibilityCheck[gcp.getnScenarios()];
+		this.merit = new MeritOrderCut[gcp.getnScenarios()];
+		for (int s=1; s<=gcp.getnScenarios(); s++) {
+			check[s-1] = new FeasibilityCheck(gcp.getScenario(s));
+			merit[s-1] = new MeritOrderCut(gcp.getScenario(s));
+			fsp[s-1] = SubProblem.feasibility(gcp.getScenario(s), dispatch);
+			osp[s-1] = SubProblem.optimality(gcp.getScenario(s), dispatch);
+		}
+		this.feasibilityTime = new long[gcp.getnScenarios()];
+		this.optimalityTime = new long[gcp.getnScenarios()];
+		this.feasibilityLPs = new int[gcp.getnScenarios()];
+		this.meritOrderCuts = new int[gcp.getnScenarios()];
+	}
+
+	public Status solve() throws IloException {
+		if (cache == null) {
+			cache = new SubproblemCache(gcp, cacheSize);
+		}
+		weight = stabilization;
+		boolean started = startWorkers();
+		try {
+			long start = System.nanoTime();
+			if (heuristic) {
+				start();
+			}
+			if (rootRounds > 0) {
+				relaxation(start);
+			}
+			if (pipeline > 0) {
+				evaluator = Executors.newSingleThreadExecutor();
+				mp.setIncumbentListener(this::incumbent);
+			}
+			return iterate(start);
+		} finally {
+			if (evaluator != null) {
+				stopEvaluator();
+			}
+			if (started) {
+				stopWorkers();
+			}
+		}
+	}
+
+	/**
+	 * Runs the first phase on its own for up to the rounds set with setRootRounds, e.g. before the extended BD
+	 * solves the master with the cuts found here.
+	 * The master is integer again afterwards
+	 * @return the number of rounds of the first phase
+	 */
+	public int solveRelaxation() throws IloException {
+		boolean started = startWorkers();
+		try {
+			relaxation(System.nanoTime());
+			return relaxationRounds;
+		} finally {
+			if (started) {
+				stopWorkers();
+			}
+		}
+	}
+
+	// Starts the threads solving the scenarios if there are several and they are not running yet
+	private boolean startWorkers() {
+		int tasks = gcp.getnScenarios()*Math.max(poolSolutions, 1);
+		int threads = Math.min(workers > 0 ? workers : Runtime.getRuntime().availableProcessors(), tasks);
+		if (threads <= 1 || executor != null) {
+			return false;
+		}
+		executor = Executors.newFixedThreadPool(threads);
+		return true;
+	}
+
+	private void stopWorkers() {
+		executor.shutdown();
+		executor = null;
+	}
+
+	/**
+	 * The first phase: Bender's Decomposition on the LP relaxation of the master. Cuts are valid for every u,
+	 * so the ones found at fractional solutions are kept for the integer master, where they start it off with a
+	 * good lower bound. The phase ends when the relaxation is solved, when its bound stalls or after the maximum
+	 * number of rounds.
+	 */
+	private void relaxation(long start) throws IloException {
+		mp.relax();
+		try {
+			double best = Double.NEGATIVE_INFINITY;
+			int stalled = 0;
+			while (relaxationRounds < rootRounds && stalled < STALL_ROUNDS) {
+				double remaining = timeLimit - (System.nanoTime() - start)/1e9;
+				if (remaining <= 0) {
+					return;
+				}
+				long phase = System.nanoTime();
+				if (timeLimit < Double.POSITIVE_INFINITY) {
+					mp.setTimeLimit(remaining);
+				}
+				mp.solve();
+				masterTime += System.nanoTime() - phase;
+				if (mp.getStatus() != IloCplex.Status.Optimal) {
+					return;
+				}
+				// The relaxation with valid cuts bounds the integer problem from below
+				double bound = mp.getObjValue();
+				lowerBound = Math.max(lowerBound, bound);
+				relaxationBound = bound;
+				stalled = bound - best > STALL_TOLERANCE*Math.max(1, Math.abs(bound)) ? 0 : stalled+1;
+				best = Math.max(best, bound);
+				double[][] U = mp.getRelaxedU();
+				relaxationRounds++;
+
+				// The combinatorial shortcuts need a binary U, so the subproblems are solved for the fractional one
+				boolean[] feasible = forEachScenario(s -> {
+					long solve = System.nanoTime();
+					fsp[s-1].update(U);
+					fsp[s-1].solve();
+					long checked = System.nanoTime();
+					feasibilityTime[s-1] += checked - solve;
+					if (fsp[s-1].getObjValue() > 1e-7) {
+						return false;
+					}
+					osp[s-1].update(U);
+					osp[s-1].solve();
+					optimalityTime[s-1] += System.nanoTime() - checked;
+					return true;
+				});
+				boolean allFeasible = true;
+				phase = System.nanoTime();
+				for (int s=1; s<=feasible.length; s++) {
+					if (!feasible[s-1]) {
+						mp.addFeasibilityCut(fsp[s-1], s);
+						allFeasible = false;
+					}
+				}
+				cutTime += System.nanoTime() - phase;
+				if (!allFeasible) {
+					continue;
+				}
+
+				double expected = 0;
+				for (int s=1; s<=osp.length; s++) {
+					expected += gcp.getProbability()[s-1]*osp[s-1].getObjValue();
+				}
+				if (mp.getPhi() + tolerance >= expected) {
+					// The relaxation is solved, more cuts can only come from integer solutions
+					return;
+				}
+				phase = System.nanoTime();
+				if (mp.isMultiCut()) {
+					for (int s=1; s<=osp.length; s++) {
+						if (mp.getPhi(s) + tolerance < osp[s-1].getObjValue()) {
+							mp.addOptimalityCut(osp[s-1], s);
+						}
+					}
+				} else {
+					mp.addOptimalityCut(osp);
+				}
+				cutTime += System.nanoTime() - phase;
+			}
+		} finally {
+			mp.restoreIntegrality();
+		}
+	}
+
+	private Status iterate(long start) throws IloException {
+		while (true) {
+			addEvaluated();
+			if (iterations >= maxIterations) {
+				return Status.ITERATION_LIMIT;
+			}
+			double remaining = timeLimit - (System.nanoTime() - start)/1e9;
+			if (remaining <= 0) {
+				return Status.TIME_LIMIT;
+			}
+
+			long phase = System.nanoTime();
+			// Without a time limit the master keeps the limit of CPLEX, as it did before there was one
+			if (timeLimit < Double.POSITIVE_INFINITY) {
+				mp.setTimeLimit(remaining);
+			}
+			submitted.clear();
+			// Incumbents of the previous solve that are still being priced no longer count towards stopping this one
+			synchronized (violatedIncumbents) {
+				generation++;
+				violatedIncumbents.set(0);
+				stopped.set(false);
+			}
+			mp.solve();
+			masterTime += System.nanoTime() - phase;
+			if (mp.getStatus() != IloCplex.Status.Optimal) {
+				if (stopped.get()) {
+					// Cuts arrived that cut off incumbents of this solve, they are added before the next one
+					restarts++;
+					continue;
+				}
+				// The master was stopped by the time limit, so its objective is no valid lower bound
+				return Status.TIME_LIMIT;
+			}
+			lowerBound = Math.max(lowerBound, mp.getBestObjValue());
+			if (mp.updateCutPool() > 0) {
+				// Cuts kept aside are violated again, the master has to be solved with them before U is checked
+				continue;
+			}
+			Commitment U = mp.getCommitment();
+			iterations++;
+
+			List<Commitment> others = new ArrayList<Commitment>();
+			List<double[]> otherPhi = new ArrayList<double[]>();
+			if (poolSolutions > 1) {
+				for (int i : mp.getPoolSolutions(poolSolutions)) {
+					Commitment V = mp.getCommitment(i);
+					if (!V.equals(U)) {
+						others.add(V);
+						otherPhi.add(mp.getPhiValues(i));
+					}
+				}
+			}
+			SubproblemCache.Result[] results = others.isEmpty() ? serial(() -> price(U)) : serial(() -> price(U, others, otherPhi));
+			boolean allFeasible = true;
+			phase = System.nanoTime();
+			for (int s=1; s<=results.length; s++) {
+				if (!results[s-1].isFeasible()) {
+					// The second stage of scenario s is infeasible, cut U off and return to the master
+					mp.addFeasibilityCut(results[s-1].getCut());
+					allFeasible = false;
+				}
+			}
+			cutTime += System.nanoTime() - phase;
+			if (!allFeasible) {
+				report(start);
+				continue;
+			}
+
+			double[] Q = new double[osp.length];
+			double expected = 0;
+			for (int s=1; s<=osp.length; s++) {
+				Q[s-1] = results[s-1].getObjValue();
+				expected += gcp.getProbability()[s-1]*Q[s-1];
+			}
+			double cost = mp.getFixedCost() + expected;
+			if (cost < upperBound) {
+				upperBound = cost;
+				incumbent = U;
+			}
+
+			// phi covering the expected production cost proves U optimal, also in the multi-cut master
+			if (mp.getPhi() + tolerance >= expected) {
+				report(start);
+				return Status.OPTIMAL;
+			}
+			if (getGap() <= gap) {
+				report(start);
+				return Status.GAP;
+			}
+			// In the multi-cut master only the scenarios whose phi is too small get a cut
+			boolean[] violated = new boolean[osp.length];
+			for (int s=1; s<=osp.length; s++) {
+				violated[s-1] = !mp.isMultiCut() || mp.getPhi(s) + tolerance < Q[s-1];
+			}
+			phase = System.nanoTime();
+			Cut[] cuts = new Cut[osp.length];
+			for (int s=1; s<=osp.length; s++) {
+				cuts[s-1] = results[s-1].getCut();
+			}
+			boolean stabilized = weight >= MIN_STABILIZATION && serial(() -> separate(U, violated, cuts));
+			if (paretoCuts && !stabilized) {
+				SubProblem[] pareto = serial(() -> paretoProblems(U, Q, violated));
+				for (int s=1; s<=osp.length; s++) {
+					if (violated[s-1]) {
+						cuts[s-1] = mp.scenarioCut(pareto[s-1], s);
+						cache.put(U, s, new SubproblemCache.Result(true, Q[s-1], cuts[s-1]));
+					}
+				}
+			}
+			boolean changed = false;
+			if (mp.isMultiCut()) {
+				for (int s=1; s<=osp.length; s++) {
+					if (violated[s-1]) {
+						changed |= mp.addOptimalityCut(cuts[s-1], s);
+					}
+				}
+			} else {
+				changed = mp.addOptimalityCut(cuts);
+			}
+			if (paretoCuts || stabilization > 0) {
+				moveCore(U);
+			}
+			cutTime += System.nanoTime() - phase;
+			report(start);
+			if (!changed && evaluated.isEmpty() && pending.isEmpty()) {
+				// The cuts of U are in the master already, so phi only misses them within the tolerances of CPLEX and
+				// the next solve would return U again
+				duplicateStop = true;
+				return Status.OPTIMAL;
+			}
+		}
+	}
+
+	// Tells the listener and the flight recorder about the iteration that just ended, with the cuts it added
+	private void report(long start) {
+		BendersListener.Iteration iteration = new BendersListener.Iteration(iterations, lowerBound, upperBound, mp.getCuts(),
+				mp.getRows(), mp.getNodes(), (System.nanoTime() - start)/1e9);
+		BendersEvents.iteration(iteration);
+		if (listener != null) {
+			listener.iteration(iteration);
+		}
+	}
+
+	/**
+	 * @return the results of every scenario at U, from the cache or solved
+	 */
+	private SubproblemCache.Result[] price(Commitment U) throws IloException {
+		// A pattern that was checked before, e.g. after its cut was purged, is answered from the cache
+		SubproblemCache.Result[] results = new SubproblemCache.Result[osp.length];
+		forEachScenario(s -> {
+			results[s-1] = cache.get(U, s);
+			if (results[s-1] == null) {
+				results[s-1] = solveScenario(s, U);
+				cache.put(U, s, results[s-1]);
+			}
+			return results[s-1].isFeasible();
+		});
+		return results;
+	}
+
+	/**
+	 * Prices U together with other solutions of the master's solution pool. Every pair of solution and scenario is a
+	 * task of its own, on subproblems borrowed from the pool of the scenario. The cuts of the other solutions are added
+	 * with the next batch
+	 * @return the results of every scenario at U
+	 */
+	private SubproblemCache.Result[] price(Commitment U, List<Commitment> others, List<double[]> phi) throws IloException {
+		if (pools == null) {
+			pools = new SubproblemPool[osp.length];
+			for (int s=1; s<=osp.length; s++) {
+				pools[s-1] = new SubproblemPool(gcp.getScenario(s), 0, dispatch);
+			}
+		}
+		List<Commitment> solutions = new ArrayList<Commitment>();
+		solutions.add(U);
+		solutions.addAll(others);
+		int S = osp.length;
+		SubproblemCache.Result[][] results = new SubproblemCache.Result[solutions.size()][S];
+		forEach(solutions.size()*S, k -> {
+			int i = (k-1)/S + 1;
+			int s = (k-1)%S + 1;
+			Commitment V = solutions.get(i-1);
+			SubproblemCache.Result result = cache.get(V, s);
+			if (result == null) {
+				SubproblemPool.Entry entry = pools[s-1].borrow();
+				try {
+					result = solveScenario(s, V, entry.getFeasibilityCheck(), entry.getFeasibilityProblem(),
+							entry.getMeritOrderCut(), entry.getOptimalityProblem());
+				} finally {
+					pools[s-1].release(entry);
+				}
+				cache.put(V, s, result);
+			}
+			results[i-1][s-1] = result;
+			return result.isFeasible();
+		});
+		int solve;
+		synchronized (violatedIncumbents) {
+			solve = generation;
+		}
+		for (int i=2; i<=solutions.size(); i++) {
+			evaluated.add(new Evaluation(solutions.get(i-1), phi.get(i-2), results[i-1], solve));
+		}
+		pricedPoolSolutions += others.size();
+		return results[0];
+	}
+
+	// Runs a task using the subproblems on the evaluator while pipelined, so it waits for the incumbents priced before
+	private <V> V serial(Callable<V> task) throws IloException {
+		if (evaluator == null) {
+			try {
+				return task.call();
+			} catch (IloException | RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return await(evaluator.submit(task));
+	}
+
+	// Called by CPLEX for every incumbent of the running master solve
+	private void incumbent(Commitment U, double[] phi) {
+		if (!submitted.add(U)) {
+			return;
+		}
+		int solve;
+		synchronized (violatedIncumbents) {
+			solve = generation;
+		}
+		pending.add(evaluator.submit(() -> {
+			Evaluation evaluation = new Evaluation(U, phi, price(U), solve);
+			evaluated.add(evaluation);
+			if (cutsOff(evaluation)) {
+				synchronized (violatedIncumbents) {
+					if (evaluation.generation == generation && violatedIncumbents.incrementAndGet() >= pipeline) {
+						stopped.set(true);
+						mp.abort();
+					}
+				}
+			}
+			return null;
+		}));
+	}
+
+	private boolean cutsOff(Evaluation evaluation) {
+		double expected = 0;
+		for (int s=1; s<=osp.length; s++) {
+			SubproblemCache.Result result = evaluation.results[s-1];
+			if (!result.isFeasible() || mp.isMultiCut() && evaluation.phi[s-1] + tolerance < result.getObjValue()) {
+				return true;
+			}
+			expected += gcp.getProbability()[s-1]*result.getObjValue();
+		}
+		return !mp.isMultiCut() && evaluation.phi[0] + tolerance < expected;
+	}
+
+	/**
+	 * Adds the cuts of the incumbents and pool solutions priced since the last master solve, and takes their upper bounds
+	 */
+	private void addEvaluated() throws IloException {
+		for (Iterator<Future<?>> it = pending.iterator(); it.hasNext(); ) {
+			Future<?> future = it.next();
+			if (future.isDone()) {
+				await(future);
+				it.remove();
+			}
+		}
+		long phase = System.nanoTime();
+		Evaluation evaluation;
+		while ((evaluation = evaluated.poll()) != null) {
+			SubproblemCache.Result[] results = evaluation.results;
+			boolean feasible = true;
+			double expected = 0;
+			for (int s=1; s<=results.length; s++) {
+				if (!results[s-1].isFeasible()) {
+					mp.addFeasibilityCut(results[s-1].getCut());
+					feasible = false;
+				} else {
+					expected += gcp.getProbability()[s-1]*results[s-1].getObjValue();
+				}
+			}
+			if (!feasible) {
+				continue;
+			}
+			double cost = mp.getFixedCost(evaluation.U) + expected;
+			if (cost < upperBound) {
+				upperBound = cost;
+				incumbent = evaluation.U;
+			}
+			Cut[] cuts = new Cut[results.length];
+			for (int s=1; s<=results.length; s++) {
+				cuts[s-1] = results[s-1].getCut();
+				if (mp.isMultiCut() && evaluation.phi[s-1] + tolerance < results[s-1].getObjValue()) {
+					mp.addOptimalityCut(cuts[s-1], s);
+				}
+			}
+			if (!mp.isMultiCut() && evaluation.phi[0] + tolerance < expected) {
+				mp.addOptimalityCut(cuts);
+			}
+		}
+		cutTime += System.nanoTime() - phase;
+	}
+
+	// Stops pricing incumbents, the subproblems are free again once the running task has ended
+	private void stopEvaluator() {
+		evaluator.shutdownNow();
+		try {
+			evaluator.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		evaluator = null;
+		pending.clear();
+		evaluated.clear();
+	}
+
+	private static class Evaluation {
+		private final Commitment U;
+		private final double[] phi;		// phi of the master incumbent
+		private final SubproblemCache.Result[] results; // in S
+		private final int generation;	// the master solve that found U
+
+		private Evaluation(Commitment U, double[] phi, SubproblemCache.Result[] results, int generation) {
+			this.U = U;
+			this.phi = phi;
+			this.results = results;
+			this.generation = generation;
+		}
+	}
+
+	private interface ScenarioTask {
+		boolean run(int s) throws IloException;
+	}
+
+	/**
+	 * Runs a task for every scenario, on the worker threads if there are several.
+	 * Every task only touches the subproblems of its own scenario, so they do not need to be synchronised
+	 * @return the result of every task, in S
+	 */
+	private boolean[] forEachScenario(ScenarioTask task) throws IloException {
+		return forEach(gcp.getnScenarios(), task);
+	}
+
+	// Runs a task for every index from 1 to n, on the worker threads if there are several
+	private boolean[] forEach(int n, ScenarioTask task) throws IloException {
+		boolean[] result = new boolean[n];
+		if (executor == null) {
+			for (int s=1; s<=result.length; s++) {
+				result[s-1] = task.run(s);
+			}
+			return result;
+		}
+		List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		for (int s=1; s<=result.length; s++) {
+			int scenario = s;
+			futures.add(executor.submit(() -> task.run(scenario)));
+		}
+		try {
+			for (int s=1; s<=result.length; s++) {
+				result[s-1] = await(futures.get(s-1));
+			}
+		} finally {
+			for (Future<Boolean> future : futures) {
+				future.cancel(true);
+			}
+		}
+		return result;
+	}
+
+	// Waits for a task and throws what it threw
+	private static <V> V await(Future<V> future) throws IloException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IloException("Interrupted while solving the subproblems");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IloException) {
+				throw (IloException) e.getCause();
+			}
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Checks the feasibility of scenario s, solving its feasibility subproblem only if the combinatorial check cannot decide,
+	 * and if it is feasible takes the cut from the merit order or solves its optimality subproblem
+	 * @return whether the second stage of scenario s is feasible, its production cost and its cut
+	 */
+	private SubproblemCache.Result solveScenario(int s, Commitment U) throws IloException {
+		return solveScenario(s, U, check[s-1], fsp[s-1], merit[s-1], osp[s-1]);
+	}
+
+	// The same with the given subproblems of scenario s, e.g. borrowed from its pool
+	private SubproblemCache.Result solveScenario(int s, Commitment U, FeasibilityCheck checker, SubProblem feasibilityProblem,
+			MeritOrderCut meritOrderCut, SubProblem optimalityProblem) throws IloException {
+		long phase = System.nanoTime();
+		FeasibilityCheck.Result feasible = feasibilityCheck ? checker.check(U) : FeasibilityCheck.Result.UNKNOWN;
+		if (feasible == FeasibilityCheck.Result.INFEASIBLE) {
+			tally(feasibilityTime, s, phase);
+			return new SubproblemCache.Result(false, Double.POSITIVE_INFINITY, checker.getCut());
+		}
+		if (feasible == FeasibilityCheck.Result.UNKNOWN) {
+			count(feasibilityLPs, s);
+			feasibilityProblem.update(U);
+			feasibilityProblem.solve();
+			if (feasibilityProblem.getObjValue() > 1e-7) {
+				tally(feasibilityTime, s, phase);
+				return new SubproblemCache.Result(false, Double.POSITIVE_INFINITY, mp.scenarioCut(feasibilityProblem, s));
+			}
+		}
+		long checked = tally(feasibilityTime, s, phase);
+		if (meritOrder && meritOrderCut.solve(U)) {
+			// The ramps do not couple the hours, so the cut follows from the merit order
+			count(meritOrderCuts, s);
+			tally(optimalityTime, s, checked);
+			return new SubproblemCache.Result(true, meritOrderCut.getObjValue(), meritOrderCut.getCut());
+		}
+		optimalityProblem.update(U);
+		optimalityProblem.solve();
+		tally(optimalityTime, s, checked);
+		return new SubproblemCache.Result(true, optimalityProblem.getObjValue(), mp.scenarioCut(optimalityProblem, s));
+	}
+
+	// Pool solutions of the same scenario are priced concurrently, so the statistics of a scenario are updated under a lock
+	private synchronized long tally(long[] times, int s, long since) {
+		long now = System.nanoTime();
+		times[s-1] += now - since;
+		return now;
+	}
+
+	private synchronized void count(int[] counts, int s) {
+		counts[s-1]++;
+	}
+
+	/**
+	 * Prices the priority list commitment in every scenario. If its second stage is feasible it becomes the incumbent
+	 * and the starting solution of the master, and its cuts go to the master before the first solve
+	 */
+	private void start() throws IloException {
+		Commitment U = new PriorityList(gcp, mp.getFormulation()).commit();
+		SubproblemCache.Result[] results = new SubproblemCache.Result[osp.length];
+		boolean[] feasible = forEachScenario(s -> {
+			results[s-1] = solveScenario(s, U);
+			cache.put(U, s, results[s-1]);
+			return results[s-1].isFeasible();
+		});
+		double[] Q = new double[osp.length];
+		Cut[] cuts = new Cut[osp.length];
+		double expected = 0;
+		for (int s=1; s<=osp.length; s++) {
+			if (!feasible[s-1]) {
+				return;
+			}
+			Q[s-1] = results[s-1].getObjValue();
+			cuts[s-1] = results[s-1].getCut();
+			expected += gcp.getProbability()[s-1]*Q[s-1];
+		}
+		heuristicObjValue = mp.getFixedCost(U) + expected;
+		upperBound = heuristicObjValue;
+		incumbent = U;
+		mp.addMIPStart(U, Q);
+		if (mp.isMultiCut()) {
+			for (int s=1; s<=osp.length; s++) {
+				mp.addOptimalityCut(cuts[s-1], s);
+			}
+		} else {
+			mp.addOptimalityCut(cuts);
+		}
+	}
+
+	/**
+	 * Solves the subproblems of the scenarios that need a cut at weight*core + (1-weight)*U, and takes their cuts
+	 * if they cut off the master solution. Otherwise the weight is halved and the cuts at U are kept
+	 * @return whether the cuts at the separation point replaced those in cuts
+	 */
+	private boolean separate(Commitment U, boolean[] needed, Cut[] cuts) throws IloException {
+		double[][] core = core();
+		double[][] point = new double[gcp.getnGenerators()][gcp.getT()];
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			for (int t=1; t <= gcp.getT(); t++) {
+				point[g-1][t-1] = weight*core[g-1][t-1] + (1-weight)*U.get(g, t);
+			}
+		}
+		Cut[] separated = new Cut[osp.length];
+		boolean[] feasible = forEachScenario(s -> {
+			if (!needed[s-1]) {
+				return true;
+			}
+			long solve = System.nanoTime();
+			fsp[s-1].update(point);
+			fsp[s-1].solve();
+			long checked = System.nanoTime();
+			feasibilityTime[s-1] += checked - solve;
+			if (fsp[s-1].getObjValue() > 1e-7) {
+				return false;
+			}
+			osp[s-1].update(point);
+			osp[s-1].solve();
+			optimalityTime[s-1] += System.nanoTime() - checked;
+			separated[s-1] = mp.scenarioCut(osp[s-1], s);
+			return true;
+		});
+		// A separation point without a feasible dispatch gives no optimality cut
+		boolean cutsOff = true;
+		for (int s=1; s<=osp.length; s++) {
+			cutsOff &= feasible[s-1];
+		}
+		if (cutsOff && mp.isMultiCut()) {
+			for (int s=1; s<=osp.length; s++) {
+				cutsOff &= !needed[s-1] || separated[s-1].evaluate(U, null) > mp.getPhi(s) + tolerance;
+			}
+		} else if (cutsOff) {
+			double expected = 0;
+			for (int s=1; s<=osp.length; s++) {
+				expected += gcp.getProbability()[s-1]*separated[s-1].evaluate(U, null);
+			}
+			cutsOff = expected > mp.getPhi() + tolerance;
+		}
+		if (!cutsOff) {
+			weight /= 2;
+			return false;
+		}
+		weight = Math.min(stabilization, 2*weight);
+		for (int s=1; s<=osp.length; s++) {
+			if (needed[s-1]) {
+				cuts[s-1] = separated[s-1];
+			}
+		}
+		stabilizedCuts++;
+		return true;
+	}
+
+	private double[][] core() {
+		if (core == null) {
+			core = new double[gcp.getnGenerators()][gcp.getT()];
+			for (double[] row : core) {
+				Arrays.fill(row, 0.5);
+			}
+		}
+		return core;
+	}
+
+	// The core point moves halfway towards every master solution that has a feasible second stage
+	private void moveCore(Commitment U) {
+		double[][] core = core();
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			for (int t=1; t <= gcp.getT(); t++) {
+				core[g-1][t-1] = (core[g-1][t-1] + U.get(g, t))/2;
+			}
+		}
+	}
+
+	/**
+	 * Solves the Magnanti-Wong problems at U of the scenarios that need a cut
+	 * @return the subproblems holding the duals of the cuts, in S
+	 */
+	private SubProblem[] paretoProblems(Commitment U, double[] objValue, boolean[] needed) throws IloException {
+		if (pareto == null) {
+			// The dispatch solver has no Magnanti-Wong form, so CPLEX models are kept for it
+			pareto = new OptimalityProblem[osp.length];
+			for (int s=1; s<=osp.length; s++) {
+				pareto[s-1] = osp[s-1] instanceof OptimalityProblem ? (OptimalityProblem) osp[s-1] : new OptimalityProblem(gcp.getScenario(s));
+			}
+		}
+		double[][] core = core();
+		forEachScenario(s -> {
+			if (needed[s-1] && !pareto[s-1].solvePareto(U, core, objValue[s-1])) {
+				// Numerical trouble in the auxiliary problem, the plain cut at U is still valid
+				pareto[s-1].update(U);
+				pareto[s-1].solve();
+			}
+			return true;
+		});
+		return pareto;
+	}
+
+	/**
+	 * Reports every iteration to the listener, null for none
+	 */
+	public void setListener(BendersListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets the relative gap (UB-LB)/UB at which the solve stops, e.g. 0.001 for 0.1%
+	 */
+	public void setGap(double gap) {
+		this.gap = gap;
+	}
+
+	/**
+	 * Sets the absolute tolerance of the optimality test phi >= production cost
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Sets the wall clock budget of the solve in seconds
+	 */
+	public void setTimeLimit(double seconds) {
+		this.timeLimit = seconds;
+	}
+
+	/**
+	 * Takes the optimality cuts from the Magnanti-Wong problem instead of the first optimal dual CPLEX returns
+	 */
+	public void setParetoCuts(boolean paretoCuts) {
+		this.paretoCuts = paretoCuts;
+	}
+
+	/**
+	 * Sets the starting core point of the Pareto cuts and the stabilisation, e.g. the solution of the master's LP relaxation.
+	 * Every entry should lie strictly between 0 and 1
+	 */
+	public void setParetoCore(double[][] core) {
+		this.core = new double[core.length][];
+		for (int g=1; g <= core.length; g++) {
+			this.core[g-1] = core[g-1].clone();
+		}
+	}
+
+	/**
+	 * Separates the cuts at stabilization*core + (1-stabilization)*U instead of at the master solution U, 0 turns it off.
+	 * The weight adapts during the solve, e.g. 0.5 to start in the middle
+	 */
+	public void setStabilization(double stabilization) {
+		if (stabilization < 0 || stabilization >= 1) {
+			throw new IllegalArgumentException("The stabilization has to lie in [0, 1): "+stabilization);
+		}
+		this.stabilization = stabilization;
+	}
+
+	/**
+	 * Sets after how many consecutive slack master solves a cut is moved out of the master, 0 keeps every cut
+	 */
+	public void setMaxCutAge(int maxCutAge) {
+		mp.setMaxCutAge(maxCutAge);
+	}
+
+	/**
+	 * Sets the number of threads solving the scenario subproblems, 0 for one per core.
+	 * No more threads than scenarios are started
+	 */
+	public void setWorkers(int workers) {
+		this.workers = workers;
+	}
+
+	/**
+	 * Sets the maximum number of rounds on the LP relaxation of the master before the integer iterations, 0 skips them
+	 */
+	public void setRootRounds(int rootRounds) {
+		this.rootRounds = rootRounds;
+	}
+
+	/**
+	 * Selects whether feasibility is checked combinatorially before the feasibility subproblem is solved
+	 */
+	public void setFeasibilityCheck(boolean feasibilityCheck) {
+		this.feasibilityCheck = feasibilityCheck;
+	}
+
+	/**
+	 * Selects whether optimality cuts are taken from the merit order when the ramps do not couple the hours
+	 */
+	public void setMeritOrderCuts(boolean meritOrder) {
+		this.meritOrder = meritOrder;
+	}
+
+	/**
+	 * Prices the incumbents of every master solve while it runs, and restarts it once batch of them are cut off.
+	 * 0 solves the master to optimality before its solution is checked
+	 */
+	public void setPipeline(int batch) {
+		this.pipeline = batch;
+	}
+
+	/**
+	 * Prices the k best distinct solutions of every master solve instead of only its optimum, at most 1 prices the optimum
+	 */
+	public void setPoolSolutions(int k) throws IloException {
+		this.poolSolutions = Math.max(k, 1);
+		mp.setSolutionPool(k);
+	}
+
+	/**
+	 * Selects whether the solve starts from the priority list commitment as its first incumbent
+	 */
+	public void setHeuristic(boolean heuristic) {
+		this.heuristic = heuristic;
+	}
+
+	/**
+	 * Sets how many commitment patterns the subproblem results are remembered for, 0 disables the cache
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	public void setThreads(int threads) throws IloException {
+		mp.setThreads(threads);
+	}
+
+	public double getLowerBound() {
+		return lowerBound;
+	}
+
+	public double getUpperBound() {
+		return upperBound;
+	}
+
+	/**
+	 * @return the relative gap between the bounds
+	 */
+	public double getGap() {
+		if (upperBound == Double.POSITIVE_INFINITY) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return (upperBound - lowerBound)/Math.max(Math.abs(upperBound), 1e-10);
+	}
+
+	/**
+	 * @return the best first stage solution found, or null if there is none
+	 */
+	public Commitment getIncumbent() {
+		return incumbent;
+	}
+
+	/**
+	 * @return the objective of the priority list commitment, infinite if it was not used or its second stage is infeasible
+	 */
+	public double getHeuristicObjValue() {
+		return heuristicObjValue;
+	}
+
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the number of solutions from the master's solution pool that were priced besides its optimum
+	 */
+	public int getPricedPoolSolutions() {
+		return pricedPoolSolutions;
+	}
+
+	/**
+	 * @return whether the solve ended because the cuts of the master solution were in the master already, which happens
+	 * when phi misses the production cost by more than the tolerance only through the tolerances of CPLEX
+	 */
+	public boolean isDuplicateStop() {
+		return duplicateStop;
+	}
+
+	/**
+	 * @return the number of master solves that were stopped because cuts arrived for their incumbents
+	 */
+	public int getRestarts() {
+		return restarts;
+	}
+
+	/**
+	 * @return the number of iterations whose cuts came from the stabilised separation point
+	 */
+	public int getStabilizedCuts() {
+		return stabilizedCuts;
+	}
+
+	/**
+	 * @return the number of rounds on the LP relaxation of the master
+	 */
+	public int getRelaxationRounds() {
+		return relaxationRounds;
+	}
+
+	/**
+	 * @return the last bound of the LP relaxation phase
+	 */
+	public double getRelaxationBound() {
+		return relaxationBound;
+	}
+
+	public double getMasterSeconds() {
+		return masterTime/1e9;
+	}
+
+	/**
+	 * @return the time spent in the feasibility subproblems, summed over the scenarios
+	 */
+	public double getFeasibilitySeconds() {
+		return sum(feasibilityTime)/1e9;
+	}
+
+	/**
+	 * @return the time spent in the optimality subproblems, summed over the scenarios
+	 */
+	public double getOptimalitySeconds() {
+		return sum(optimalityTime)/1e9;
+	}
+
+	private static long sum(long[] times) {
+		long sum = 0;
+		for (long time : times) {
+			sum += time;
+		}
+		return sum;
+	}
+
+	public double getCutSeconds() {
+		return cutTime/1e9;
+	}
+
+	/**
+	 * @return the number of feasibility subproblems solved, summed over the scenarios
+	 */
+	public int getFeasibilityLPs() {
+		int solves = 0;
+		for (int lps : feasibilityLPs) {
+			solves += lps;
+		}
+		return solves;
+	}
+
+	/**
+	 * @return the number of optimality cuts taken from the merit order, summed over the scenarios
+	 */
+	public int getMeritOrderCuts() {
+		int cuts = 0;
+		for (int count : meritOrderCuts) {
+			cuts += count;
+		}
+		return cuts;
+	}
+
+	/**
+	 * @return the number of scenario results taken from the cache
+	 */
+	public long getCacheHits() {
+		return cache == null ? 0 : cache.getHits();
+	}
+
+	/**
+	 * @return the number of scenario results the subproblems had to be solved for
+	 */
+	public long getCacheMisses() {
+		return cache == null ? 0 : cache.getMisses();
+	}
+
+	public MasterProblem getMasterProblem() {
+		return mp;
+	}
+
+	/**
+	 * Prints the dispatch of the first scenario and the on status of the incumbent
+	 */
+	public void print() throws IloException {
+		if (incumbent == null) {
+			System.out.println("No feasible solution was found");
+			return;
+		}
+		osp[0].update(incumbent);
+		osp[0].solve();
+		osp[0].print();
+
+		System.out.println("\n=====Generator On Status===== ");
+        for(int i = 1; i<= gcp.getnGenerators(); i++){
+        	String str = "";
+            for(int j = 1; j<=gcp.getT() ;j++){
+            	if (incumbent.isOn(i, j)) {
+            		str = str+gcp.getName()[i-1]+"_"+j+" = On  ";
+            	}
+            }
+            if (str != "") {
+            	System.out.print("[ "+str+"] \n");
+            }
+        }
+        System.out.println(" \n ===> Best objective value "+upperBound+"\n");
+	}
+
+	public void end() {
+		for (int s=1; s<=osp.length; s++) {
+			fsp[s-1].end();
+			osp[s-1].end();
+			if (pareto != null && pareto[s-1] != osp[s-1]) {
+				pareto[s-1].end();
+			}
+			if (pools != null) {
+				pools[s-1].end();
+			}
+		}
+		mp.end();
+	}
+
+}
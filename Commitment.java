@@ -0,0 +1,155 @@
+import java.util.Arrays;
+
+public final class Commitment {
+	/**
+	 * A binary first stage solution, the on status of every generator in every hour, packed into bits.
+	 * Every generator has its own words of 64 hours, so a horizon of up to 64 hours takes one long per generator.
+	 * Commitments are immutable, they hash and compare by their bits and can be used as keys directly.
+	 * Generators and hours are numbered from 1, as everywhere else in the problem.
+	 */
+
+	private final int G;
+	private final int T;
+	private final int words;	// longs per generator
+	private final long[] bits;	// hour t of generator g is bit (t-1)%64 of word (g-1)*words+(t-1)/64
+	private final int hash;
+
+	private Commitment(int G, int T, long[] bits) {
+		this.G = G;
+		this.T = T;
+		this.words = (T+63)/64;
+		this.bits = bits;
+		this.hash = Arrays.hashCode(bits);
+	}
+
+	/**
+	 * @return the commitment of U, a generator is on if its value exceeds one half
+	 */
+	public static Commitment of(double[][] U) {
+		int T = U.length == 0 ? 0 : U[0].length;
+		int words = (T+63)/64;
+		long[] bits = new long[U.length*words];
+		for (int g=1; g <= U.length; g++) {
+			for (int t=1; t <= T; t++) {
+				if (U[g-1][t-1] > 0.5) {
+					bits[(g-1)*words + (t-1)/64] |= 1L << ((t-1)%64);
+				}
+			}
+		}
+		return new Commitment(U.length, T, bits);
+	}
+
+	/**
+	 * @return the commitment of values in (g-1)*T+(t-1) order, as returned by CPLEX for the flat u variables
+	 */
+	public static Commitment of(double[] values, int G, int T) {
+		int words = (T+63)/64;
+		long[] bits = new long[G*words];
+		for (int g=1; g <= G; g++) {
+			for (int t=1; t <= T; t++) {
+				if (values[(g-1)*T+t-1] > 0.5) {
+					bits[(g-1)*words + (t-1)/64] |= 1L << ((t-1)%64);
+				}
+			}
+		}
+		return new Commitment(G, T, bits);
+	}
+
+	public int getnGenerators() {
+		return G;
+	}
+
+	public int getT() {
+		return T;
+	}
+
+	/**
+	 * @return true if generator g is on in hour t
+	 */
+	public boolean isOn(int g, int t) {
+		return (bits[(g-1)*words + (t-1)/64] >>> ((t-1)%64) & 1L) != 0;
+	}
+
+	/**
+	 * @return 1 if generator g is on in hour t and 0 otherwise
+	 */
+	public double get(int g, int t) {
+		return isOn(g, t) ? 1 : 0;
+	}
+
+	/**
+	 * @return the number of generators that are on in hour t
+	 */
+	public int count(int t) {
+		int count = 0;
+		int word = (t-1)/64;
+		long mask = 1L << ((t-1)%64);
+		for (int g=1; g <= G; g++) {
+			if ((bits[(g-1)*words + word] & mask) != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of hours generator g is on
+	 */
+	public int hours(int g) {
+		int count = 0;
+		for (int w=1; w <= words; w++) {
+			count += Long.bitCount(bits[(g-1)*words + w-1]);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the first hour from t on in which generator g is on, or 0 if there is none.
+	 * Iterating with t = next(g, t+1) visits the on hours of a generator without looking at the off hours
+	 */
+	public int next(int g, int t) {
+		if (t > T) {
+			return 0;
+		}
+		int w = (t-1)/64;
+		long word = bits[(g-1)*words + w] & (-1L << ((t-1)%64));
+		while (true) {
+			if (word != 0) {
+				int next = w*64 + Long.numberOfTrailingZeros(word) + 1;
+				return next <= T ? next : 0;
+			}
+			if (++w == words) {
+				return 0;
+			}
+			word = bits[(g-1)*words + w];
+		}
+	}
+
+	/**
+	 * @return the commitment as a matrix of zeros and ones
+	 */
+	public double[][] toArray() {
+		double[][] U = new double[G][T];
+		for (int g=1; g <= G; g++) {
+			for (int t = next(g, 1); t != 0; t = next(g, t+1)) {
+				U[g-1][t-1] = 1;
+			}
+		}
+		return U;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof Commitment)) {
+			return false;
+		}
+		Commitment commitment = (Commitment) other;
+		return hash == commitment.hash && T == commitment.T && Arrays.equals(bits, commitment.bits);
+	}
+
+}
@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+import ilog.concert.IloRange;
+
+public class Cut {
+	/**
+	 * A Bender's cut constant + sum coef*u - phi <= 0 kept by the master problem outside of CPLEX.
+	 * The u-terms are stored sparsely by their (g-1)*T+(t-1) index. Optimality cuts bound the phi with the given index,
+	 * one per scenario in the multi-cut master, and feasibility cuts have no phi term.
+	 * Two cuts are equal when their terms agree after rounding, which is how the master rejects duplicates.
+	 */
+
+	private static final double PRECISION = 1e6; // coefficients are compared after rounding to 1e-6
+
+	private final double constant;
+	private final int[] index;
+	private final double[] value;
+	private final int phi;				// index of the phi in the -phi term, -1 for a feasibility cut
+	private final long[] rounded;		// constant and values rounded, for equals and hashCode
+	private final int hash;
+
+	private IloRange range;	// the constraint in the master, null while the cut is inactive
+	private int age;		// consecutive master solves in which the cut was slack
+
+	public Cut(double constant, double[] coefs, int phi) {
+		this(constant, nonzeros(coefs), coefs, phi);
+	}
+
+	private Cut(double constant, int[] index, double[] coefs, int phi) {
+		this.constant = constant;
+		this.index = index;
+		this.value = new double[index.length];
+		this.phi = phi;
+		this.rounded = new long[2*index.length+1];
+		rounded[0] = Math.round(constant*PRECISION);
+		for (int k=1; k <= index.length; k++) {
+			value[k-1] = coefs[index[k-1]];
+			rounded[2*k-1] = index[k-1];
+			rounded[2*k] = Math.round(value[k-1]*PRECISION);
+		}
+		this.hash = 31*Arrays.hashCode(rounded) + phi;
+	}
+
+	private Cut(Cut cut, int phi) {
+		this.constant = cut.constant;
+		this.index = cut.index;
+		this.value = cut.value;
+		this.phi = phi;
+		this.rounded = cut.rounded;
+		this.hash = 31*Arrays.hashCode(rounded) + phi;
+	}
+
+	private static int[] nonzeros(double[] coefs) {
+		int count = 0;
+		for (double coef : coefs) {
+			if (coef != 0) {
+				count++;
+			}
+		}
+		int[] index = new int[count];
+		int k = 0;
+		for (int i=1; i <= coefs.length; i++) {
+			if (coefs[i-1] != 0) {
+				index[k++] = i-1;
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @return the same cut on the phi with the given index, -1 for a feasibility cut
+	 */
+	public Cut withPhi(int phi) {
+		return new Cut(this, phi);
+	}
+
+	/**
+	 * @return the cut weighted by the probabilities of the scenarios, on the phi with the given index
+	 * @param size the number of u-terms, i.e. G*T
+	 */
+	public static Cut expectation(Cut[] cuts, double[] probability, int phi, int size) {
+		double constant = 0;
+		double[] coefs = new double[size];
+		for (int s=1; s <= cuts.length; s++) {
+			constant += probability[s-1]*cuts[s-1].constant;
+			for (int k=1; k <= cuts[s-1].index.length; k++) {
+				coefs[cuts[s-1].index[k-1]] += probability[s-1]*cuts[s-1].value[k-1];
+			}
+		}
+		return new Cut(constant, coefs, phi);
+	}
+
+	/**
+	 * @return the left hand side constant + sum coef*u - phi at a master solution, positive if the cut is violated
+	 */
+	public double evaluate(Commitment U, double[] phi) {
+		double lhs = constant;
+		for (int k=1; k <= index.length; k++) {
+			if (U.isOn(index[k-1]/U.getT()+1, index[k-1]%U.getT()+1)) {
+				lhs += value[k-1];
+			}
+		}
+		return isOptimality() ? lhs - phi[this.phi] : lhs;
+	}
+
+	public double getConstant() {
+		return constant;
+	}
+
+	/**
+	 * @return the (g-1)*T+(t-1) indices of the non-zero u-terms
+	 */
+	public int[] getIndex() {
+		return index;
+	}
+
+	public double[] getValue() {
+		return value;
+	}
+
+	public boolean isOptimality() {
+		return phi >= 0;
+	}
+
+	/**
+	 * @return the index of the phi the cut bounds, -1 for a feasibility cut
+	 */
+	public int getPhi() {
+		return phi;
+	}
+
+	public IloRange getRange() {
+		return range;
+	}
+
+	public void setRange(IloRange range) {
+		this.range = range;
+	}
+
+	public boolean isActive() {
+		return range != null;
+	}
+
+	public int getAge() {
+		return age;
+	}
+
+	public void setAge(int age) {
+		this.age = age;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof Cut)) {
+			return false;
+		}
+		Cut cut = (Cut) other;
+		return hash == cut.hash && phi == cut.phi && Arrays.equals(rounded, cut.rounded);
+	}
+
+}
@@ -1,6 +1,9 @@
+import java.util.Arrays;
+
 import ilog.concert.IloException;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
 import ilog.cplex.IloCplex;
 
 public class DirectModel {
@@ -15,152 +18,188 @@ public class DirectModel {
 	
 
 	public DirectModel(GeneratorProblem gcp) throws IloException {
+		this(gcp, MasterProblem.Formulation.CLASSIC);
+	}
+	
+	/**
+	 * @param formulation of the minimum up and down times, as in the master
+	 */
+	public DirectModel(GeneratorProblem gcp, MasterProblem.Formulation formulation) throws IloException {
 		// Initalising variables 
 		this.gcp = gcp;
 		this.model = new IloCplex();
-		this.c = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.u = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.p = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.l = new IloNumVar[gcp.getT()];
+		int G = gcp.getnGenerators();
+		int T = gcp.getT();
+		int GT = G*T;
 		
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				c[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-				u[g-1][t-1] = model.intVar(0, 1);
-				p[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-			}
-			l[t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
+		// c, u and p are created flat in (g-1)*T+(t-1) order, the 2D arrays are views of them
+		IloNumVar[] cFlat = model.numVarArray(GT, 0, Double.POSITIVE_INFINITY);
+		IloNumVar[] uFlat = model.numVarArray(GT, 0, 1, IloNumVarType.Int);
+		IloNumVar[] pFlat = model.numVarArray(GT, 0, Double.POSITIVE_INFINITY);
+		this.l = model.numVarArray(T, 0, Double.POSITIVE_INFINITY);
+		this.c = new IloNumVar[G][T];
+		this.u = new IloNumVar[G][T];
+		this.p = new IloNumVar[G][T];
+		for (int g = 1; g <= G; g++) {
+			System.arraycopy(cFlat, (g-1)*T, c[g-1], 0, T);
+			System.arraycopy(uFlat, (g-1)*T, u[g-1], 0, T);
+			System.arraycopy(pFlat, (g-1)*T, p[g-1], 0, T);
+		}
+		// Columns of the LP matrix, c from 0, u from GT, p from 2GT and l from 3GT, then startup v and shutdown w
+		// in the compact formulation
+		boolean compact = formulation == MasterProblem.Formulation.COMPACT;
+		int uCol = GT, pCol = 2*GT, lCol = 3*GT, vCol = 3*GT+T, wCol = 4*GT+T;
+		IloNumVar[] columns = new IloNumVar[compact ? 5*GT+T : 3*GT+T];
+		System.arraycopy(cFlat, 0, columns, 0, GT);
+		System.arraycopy(uFlat, 0, columns, uCol, GT);
+		System.arraycopy(pFlat, 0, columns, pCol, GT);
+		System.arraycopy(l, 0, columns, lCol, T);
+		if (compact) {
+			System.arraycopy(model.numVarArray(GT, 0, 1), 0, columns, vCol, GT);
+			System.arraycopy(model.numVarArray(GT, 0, 1), 0, columns, wCol, GT);
 		}
 		
 		// Creating Objective function
-		IloLinearNumExpr obj = model.linearNumExpr();
+		double[] costs = new double[columns.length];
 		//online and startup costs
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				obj.addTerm(1, c[g-1][t-1]);
-				obj.addTerm(gcp.getOnCost()[g-1], u[g-1][t-1]);
-			}
+		Arrays.fill(costs, 0, GT, 1);
+		for (int g = 1; g <= G; g++) {
+			Arrays.fill(costs, uCol + (g-1)*T, uCol + g*T, gcp.getOnCost()[g-1]);
 		}
 		//production costs
-		for (int t=1; t <= gcp.getT(); t++) {
-			obj.addTerm(gcp.getShedCost(), l[t-1]);
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				obj.addTerm(gcp.getProdCost()[g-1], p[g-1][t-1]);
-			}
+		for (int g = 1; g <= G; g++) {
+			Arrays.fill(costs, pCol + (g-1)*T, pCol + g*T, gcp.getProdCost()[g-1]);
 		}
+		Arrays.fill(costs, lCol, lCol+T, gcp.getShedCost());
+		IloLinearNumExpr obj = model.linearNumExpr();
+		obj.addTerms(costs, columns);
 		// minimize the objective function
         model.addMinimize(obj);
         
-        // Create constraints
-        // Constraint 1b
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				IloLinearNumExpr rhs = model.linearNumExpr();
-				lhs.addTerm(1, c[g-1][t-1]);
-				if( t == 1) { // t_0 is zero
-					rhs.addTerm(gcp.getStartGenCost()[g-1], u[g-1][t-1]);
+        // Create constraints, collected in one matrix and added to the model at once
+        RowMatrix rows = new RowMatrix(7*GT+T);
+		if (compact) {
+			// Startup costs, startups and shutdowns and the turn on and turn off rows of the compact master
+			for (int g = 1; g <= G; g++) {
+				int up = Math.max(gcp.getMinT()[g-1], 1);
+				int down = Math.max(gcp.getMaxT()[g-1], 1);
+				for (int t=1; t <= T; t++) {
+					int k = (g-1)*T+t-1;
+					rows.term(k, 1);
+					rows.term(vCol + k, -gcp.getStartGenCost()[g-1]);
+					rows.ge(0);
+					rows.term(vCol + k, 1);
+					rows.term(wCol + k, -1);
+					rows.term(uCol + k, -1);
+					if (t > 1) {
+						rows.term(uCol + k-1, 1);
+					}
+					rows.eq(0);
+					for (int i = Math.max(t-up+1, 1); i <= t; i++) {
+						rows.term(vCol + (g-1)*T+i-1, 1);
+					}
+					rows.term(uCol + k, -1);
+					rows.le(0);
+					for (int i = Math.max(t-down+1, 1); i <= t; i++) {
+						rows.term(wCol + (g-1)*T+i-1, 1);
+					}
+					rows.term(uCol + k, 1);
+					rows.le(1);
 				}
-				else {
-				rhs.addTerm(gcp.getStartGenCost()[g-1], u[g-1][t-1]);
-				rhs.addTerm(-gcp.getStartGenCost()[g-1], u[g-1][t-2]);
+			}
+		} else {
+			// Constraint 1b
+			for (int t=1; t <= T; t++) {
+				for (int g = 1; g <= G; g++) {
+					rows.term((g-1)*T+t-1, 1);
+					rows.term(uCol + (g-1)*T+t-1, -gcp.getStartGenCost()[g-1]);
+					if (t > 1) { // t_0 is zero
+						rows.term(uCol + (g-1)*T+t-2, gcp.getStartGenCost()[g-1]);
+					}
+					rows.ge(0);
 				}
-				model.addGe(lhs, rhs);
 			}
-		}
-		//Constraint 1c
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				//sum
-				for (int j = t; j <= TU(t, g); j++) {
-					if (j <= 1) {
-						lhs.addTerm(1, u[g-1][t-1]);
-						lhs.addTerm(-1, u[g-1][j-1]);
+			//Constraint 1c
+			for (int t=1; t <= T; t++) {
+				for (int g = 1; g <= G; g++) {
+					//sum, repeated terms are merged by the matrix
+					for (int j = t; j <= TU(t, g); j++) {
+						rows.term(uCol + (g-1)*T+t-1, 1);
+						rows.term(uCol + (g-1)*T+j-1, -1);
+						if (j > 1) {
+							rows.term(uCol + (g-1)*T+j-2, 1);
+						}
 					}
-					else {
-						lhs.addTerm(1, u[g-1][t-1]);
-						lhs.addTerm(-1, u[g-1][j-1]);
-						lhs.addTerm(1, u[g-1][j-2]);
-					}					
+					rows.ge(0);
 				}
-				model.addGe(lhs, 0);
 			}
-		}
-		//Constraint 1d
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				//sum
-				for (int j = t; j <= TD(t, g); j++) {
-					if (j <= 1) {
-						lhs.addTerm(1, u[g-1][t-1]);
-						lhs.addTerm(-1, u[g-1][j-1]);
+			//Constraint 1d
+			for (int t=1; t <= T; t++) {
+				for (int g = 1; g <= G; g++) {
+					//sum
+					for (int j = t; j <= TD(t, g); j++) {
+						if (j <= 1) {
+							rows.term(uCol + (g-1)*T+t-1, 1);
+							rows.term(uCol + (g-1)*T+j-1, -1);
+						}
+						else {
+							rows.term(uCol + (g-1)*T+t-1, -1);
+							rows.term(uCol + (g-1)*T+j-1, 1);
+							rows.term(uCol + (g-1)*T+j-2, -1);
+						}
 					}
-					else {
-						lhs.addTerm(-1, u[g-1][t-1]);
-						lhs.addTerm(1, u[g-1][j-1]);
-						lhs.addTerm(-1, u[g-1][j-2]);
-					}					
+					//moving the summation of ones to the rhs. Sum of ones from t to TD is TD-t+1
+					rows.ge(-(TD(t,g)-t+1));
 				}
-				//moving the summation of ones to the rhs. Sum of ones from t to TD is TD-t+1
-				model.addGe(lhs, -(TD(t,g)-t+1));
 			}
 		}
 		//Constraint 1e
-		for (int t = 1; t <= gcp.getT(); t++) {
-			IloLinearNumExpr lhs = model.linearNumExpr();
+		for (int t = 1; t <= T; t++) {
 			//sum
-			for (int g=1; g<=gcp.getnGenerators(); g++) {
-				lhs.addTerm(1, p[g-1][t-1]);}
-			lhs.addTerm(1, l[t-1]);
-			model.addEq(lhs, gcp.getDemand()[t-1]);
+			for (int g=1; g<=G; g++) {
+				rows.term(pCol + (g-1)*T+t-1, 1);
+			}
+			rows.term(lCol + t-1, 1);
+			rows.eq(gcp.getDemand()[t-1]);
 		}
 		//Constraint 1f
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				lhs.addTerm(1, p[g-1][t-1]);
-				lhs.addTerm(-(gcp.getMinP()[g-1]), u[g-1][t-1]);
-				model.addGe(lhs, 0);
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
+				rows.term(pCol + (g-1)*T+t-1, 1);
+				rows.term(uCol + (g-1)*T+t-1, -(gcp.getMinP()[g-1]));
+				rows.ge(0);
 			}
 		}
 		//Constraint 1g
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				lhs.addTerm(1, p[g-1][t-1]);
-				lhs.addTerm(-(gcp.getMaxP()[g-1]), u[g-1][t-1]);
-				model.addLe(lhs, 0);
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
+				rows.term(pCol + (g-1)*T+t-1, 1);
+				rows.term(uCol + (g-1)*T+t-1, -(gcp.getMaxP()[g-1]));
+				rows.le(0);
 			}
 		}
 		//Constraint 1h Note ramping up and down times are the same
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				if (t <= 1) {
-					lhs.addTerm(1, p[g-1][t-1]);
-				}else {
-					lhs.addTerm(1, p[g-1][t-1]);
-					lhs.addTerm(-1, p[g-1][t-2]);
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
+				rows.term(pCol + (g-1)*T+t-1, 1);
+				if (t > 1) {
+					rows.term(pCol + (g-1)*T+t-2, -1);
 				}
-				model.addLe(lhs, gcp.getRamping()[g-1]);
+				rows.le(gcp.getRamping()[g-1]);
 			}
 		}
 		
 		//Constraint 1i Note ramping up and down times are the same
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				if (t <= 1) {
-					lhs.addTerm(-1, p[g-1][t-1]);
-				}else {
-					lhs.addTerm(-1, p[g-1][t-1]);
-					lhs.addTerm(1, p[g-1][t-2]);
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
+				rows.term(pCol + (g-1)*T+t-1, -1);
+				if (t > 1) {
+					rows.term(pCol + (g-1)*T+t-2, 1);
 				}
-				model.addLe(lhs, gcp.getRamping()[g-1]);
+				rows.le(gcp.getRamping()[g-1]);
 			}
 		}
+		rows.addTo(model, columns);
 
 		
 	}
@@ -179,6 +218,38 @@ public class DirectModel {
         System.out.println(" \n ===> Optimal objective value "+model.getObjValue()+"\n");
     }
     
+    public double getObjValue() throws IloException {
+    	return model.getObjValue();
+    }
+    
+    public double getBestObjValue() throws IloException {
+    	return model.getBestObjValue();
+    }
+    
+    public IloCplex.Status getStatus() throws IloException {
+    	return model.getStatus();
+    }
+    
+    /**
+     * Silences the CPLEX log, e.g. when the result is written to standard out
+     */
+    public void quiet() {
+    	model.setOut(null);
+    }
+    
+    public void setThreads(int threads) throws IloException {
+    	model.setParam(IloCplex.Param.Threads, threads);
+    }
+    
+    public void setTimeLimit(double seconds) throws IloException {
+    	// CPLEX takes at most MAX_TIME_LIMIT of the master, its own default, which is no limit in practice
+    	model.setParam(IloCplex.Param.TimeLimit, Math.min(Math.max(seconds, 0), MasterProblem.MAX_TIME_LIMIT));
+    }
+    
+    public void setMIPGap(double gap) throws IloException {
+    	model.setParam(IloCplex.Param.MIP.Tolerances.MIPGap, gap);
+    }
+    
     public void print() throws IloException {
     	System.out.println("Optimal solution ");
         
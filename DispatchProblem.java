@@ -0,0 +1,838 @@
+import java.util.Arrays;
+
+import ilog.concert.IloException;
+
+public class DispatchProblem implements SubProblem {
+	/**
+	 * A pure Java solver for the second stage economic dispatch, used in place of the CPLEX subproblems.
+	 *
+	 * The min and max production constraints (1f, 1g) are handled as bounds on p, so the LP only has the demand rows (1e)
+	 * and the ramp rows (1h, 1i). Ramp rows are added lazily: the dispatch is first solved per hour in merit order, and only
+	 * ramp rows violated by the current dispatch are added before it is re-solved. The LP on the active rows is solved by a
+	 * bounded primal simplex with an explicit basis inverse, which stays small as it only has T plus the active ramp rows.
+	 *
+	 * In optimality mode p has cost prodCost and bounds [minP*U, maxP*U] (OptimalityProblem).
+	 * In feasibility mode p is split into three segments below, inside and above [minP*U, maxP*U] with cost 1, 0 and 1,
+	 * which is the same as minimising the slacks v1 + v2 of FeasibilityProblem.
+	 * The duals are returned with the same signs as CPLEX returns them for the two CPLEX models, so the cut builders work on either.
+	 * All working arrays are kept between solves and only grow, so repeated solves do not allocate.
+	 * Generators g and hours t run from 1 with p at (g-1)*T+t-1, as in the cut builders, while the rows and columns of the
+	 * simplex are positions in its working arrays and run from 0.
+	 */
+
+	private static final double EPS = 1e-9;		// optimality and feasibility tolerance
+	private static final double PIVOT = 1e-11;	// smallest pivot element accepted in the ratio test
+	private static final int REFACTOR = 100;	// pivots between recomputing the basis inverse
+	private static final int DEGENERATE = 50;	// degenerate pivots before switching to Bland's rule
+	private static final int AT_LOWER = -1;
+	private static final int AT_UPPER = -2;
+
+	private final GeneratorProblem gcp;
+	private final boolean feasibility;
+	private final int G;
+	private final int T;
+	private final int nSeg;		 // columns per p
+	private final int nStruct;	 // nSeg*G*T p columns followed by T shedding columns
+	private final int[] merit;	 // generators g sorted by production cost
+	private final double[] lo;	 // minP*U in G*T
+	private final double[] hi;	 // maxP*U in G*T
+
+	// active rows: T demand rows followed by the ramp rows, upRow/downRow give the row of a ramp constraint or -1
+	private final int[] upRow;
+	private final int[] downRow;
+	private int[] rampIndex;	 // (g-1)*T+t-1 of an active ramp row
+	private int[] rampDir;		 // 1 for ramp up, -1 for ramp down
+	private int nRamp;
+	private int m;
+
+	// columns: structural, one slack per ramp row and the artificials of phase one
+	private int n;
+	private int nArt;
+	private boolean phaseOne;
+	private int[] artRow;
+	private double[] artSign;
+	private double[] x;
+	private double[] lb;
+	private double[] ub;
+	private double[] cost;
+	private int[] state;		 // position in the basis or AT_LOWER/AT_UPPER
+	private int[] basis;
+	private double[] binv;		 // m*m row major
+	private double[] work;		 // m*m scratch for refactoring
+	private double[] y;
+	private double[] alpha;
+	private double[] rhs;
+	private final int[] colRows = new int[5];
+	private final double[] colVals = new double[5];
+
+	// solution
+	private boolean solved;
+	private double objValue;
+	private final double[] pSol;
+	private final double[] lSol;
+	private final double[] demandDuals;
+	private final double[] minProDuals;
+	private final double[] maxProDuals;
+	private final double[] rampUpDuals;
+	private final double[] rampDownDuals;
+	private int iterations;
+
+	public DispatchProblem(GeneratorProblem gcp, boolean feasibility) {
+		this.gcp = gcp;
+		this.feasibility = feasibility;
+		this.G = gcp.getnGenerators();
+		this.T = gcp.getT();
+		this.nSeg = feasibility ? 3 : 1;
+		this.nStruct = nSeg*G*T + T;
+		this.lo = new double[G*T];
+		this.hi = new double[G*T];
+		this.upRow = new int[G*T];
+		this.downRow = new int[G*T];
+		this.pSol = new double[G*T];
+		this.lSol = new double[T];
+		this.demandDuals = new double[T];
+		this.minProDuals = new double[G*T];
+		this.maxProDuals = new double[G*T];
+		this.rampUpDuals = new double[G*T];
+		this.rampDownDuals = new double[G*T];
+
+		// Merit order, the cheapest generator first
+		Integer[] order = new Integer[G];
+		for (int g=1; g<=G; g++) {
+			order[g-1] = g;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(gcp.getProdCost()[a-1], gcp.getProdCost()[b-1]));
+		this.merit = new int[G];
+		for (int i=1; i<=G; i++) {
+			merit[i-1] = order[i-1];
+		}
+
+		this.rampIndex = new int[16];
+		this.rampDir = new int[16];
+		allocate(T + 16, nStruct + 2*(T + 16));
+	}
+
+
+	public void update(double[][] U) {
+		for (int g=1; g<=G; g++) {
+			for (int t=1; t<=T; t++) {
+				lo[(g-1)*T+t-1] = gcp.getMinP()[g-1]*U[g-1][t-1];
+				hi[(g-1)*T+t-1] = gcp.getMaxP()[g-1]*U[g-1][t-1];
+			}
+		}
+		solved = false;
+	}
+
+	public void update(Commitment U) {
+		for (int g=1; g<=G; g++) {
+			for (int t=1; t<=T; t++) {
+				double on = U.get(g, t);
+				lo[(g-1)*T+t-1] = gcp.getMinP()[g-1]*on;
+				hi[(g-1)*T+t-1] = gcp.getMaxP()[g-1]*on;
+			}
+		}
+		solved = false;
+	}
+
+	/**
+	 * Solves the dispatch, adding violated ramp rows until the solution satisfies all of them
+	 */
+	public void solve() throws IloException {
+		// The same dispatch LP is solved for both subproblems, so the event tells which one it stands in for
+		BendersEvents.FeasibilityLP feasibilityEvent = feasibility ? new BendersEvents.FeasibilityLP() : null;
+		BendersEvents.OptimalityLP optimalityEvent = feasibility ? null : new BendersEvents.OptimalityLP();
+		if (feasibility) {
+			feasibilityEvent.begin();
+		} else {
+			optimalityEvent.begin();
+		}
+		Arrays.fill(upRow, -1);
+		Arrays.fill(downRow, -1);
+		nRamp = 0;
+		iterations = 0;
+		solved = false;
+		while (true) {
+			if (!solveActive()) {
+				throw new IloException("Dispatch subproblem is infeasible");
+			}
+			extractPrimal();
+			if (addViolatedRamps() == 0) {
+				break;
+			}
+		}
+		BendersEvents.DualExtraction dualEvent = new BendersEvents.DualExtraction();
+		dualEvent.begin();
+		extractDuals();
+		solved = true;
+		dualEvent.end();
+		if (dualEvent.shouldCommit()) {
+			dualEvent.feasibility = feasibility;
+			dualEvent.duals = demandDuals.length + 4*minProDuals.length;
+			dualEvent.commit();
+		}
+		if (feasibility && feasibilityEvent.shouldCommit()) {
+			feasibilityEvent.dispatch = true;
+			feasibilityEvent.objValue = objValue;
+			feasibilityEvent.commit();
+		} else if (!feasibility && optimalityEvent.shouldCommit()) {
+			optimalityEvent.dispatch = true;
+			optimalityEvent.objValue = objValue;
+			optimalityEvent.commit();
+		}
+	}
+
+
+	// ========= Solution getters with the CPLEX signs =========
+
+	public double getObjValue() throws IloException {
+		checkSolved();
+		return objValue;
+	}
+
+	public double[] getDemandDuals() throws IloException {
+		checkSolved();
+		return demandDuals;
+	}
+
+	public double[] getMinProDuals() throws IloException {
+		checkSolved();
+		return minProDuals;
+	}
+
+	public double[] getMaxProDuals() throws IloException {
+		checkSolved();
+		return maxProDuals;
+	}
+
+	public double[] getRampUpDuals() throws IloException {
+		checkSolved();
+		return rampUpDuals;
+	}
+
+	public double[] getRampDownDuals() throws IloException {
+		checkSolved();
+		return rampDownDuals;
+	}
+
+	public double[] getDualsDemandConstraints() throws IloException {
+		checkSolved();
+		return demandDuals.clone();
+	}
+
+	public double[][] getminProConstraints() throws IloException {
+		checkSolved();
+		return toMatrix(minProDuals);
+	}
+
+	public double[][] getmaxProConstraints() throws IloException {
+		checkSolved();
+		return toMatrix(maxProDuals);
+	}
+
+	public double[][] getRampUpConstraints() throws IloException {
+		checkSolved();
+		return toMatrix(rampUpDuals);
+	}
+
+	public double[][] getRampDownConstraints() throws IloException {
+		checkSolved();
+		return toMatrix(rampDownDuals);
+	}
+
+	public double[][] getSolutionP() throws IloException {
+		checkSolved();
+		return toMatrix(pSol);
+	}
+
+	public double[] getSolutionL() throws IloException {
+		checkSolved();
+		return lSol.clone();
+	}
+
+	/**
+	 * @return the number of simplex pivots and bound flips of the last solve
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	public void print() throws IloException {
+		checkSolved();
+		System.out.println("// ========= Printing solution ===========");
+
+        System.out.println("\n=====Shedding===== ");
+        System.out.print("[ ");
+        for(int i = 1; i<=gcp.getT() ;i++){
+        	if(lSol[i-1] > 0) {
+        		System.out.print("l_"+i+" = "+lSol[i-1]+", ");
+        	}
+        } System.out.print("] \n");
+    	System.out.println("\n=====Generator Production===== ");
+        for(int i = 1; i<= gcp.getnGenerators(); i++){
+        	String str = "";
+        	for(int j = 1; j<=gcp.getT() ;j++){
+        		if(pSol[(i-1)*T+j-1] > 0) {
+        			str = str+gcp.getName()[i-1]+"_"+j+" = "+pSol[(i-1)*T+j-1]+" ";
+        		}
+        	}
+        	if (str != "") {
+            	System.out.print("[ "+str+"] \n");
+            }
+        }
+	}
+
+	public void end() {
+		// Nothing native to release
+	}
+
+	private void checkSolved() throws IloException {
+		if (!solved) {
+			throw new IloException("Dispatch subproblem has no solution");
+		}
+	}
+
+	private double[][] toMatrix(double[] flat) {
+		double[][] matrix = new double[G][T];
+		for (int g=1; g<=G; g++) {
+			System.arraycopy(flat, (g-1)*T, matrix[g-1], 0, T);
+		}
+		return matrix;
+	}
+
+
+	// ========= Building the LP on the active rows =========
+
+	private void allocate(int rows, int cols) {
+		if (x == null || x.length < cols) {
+			int size = Math.max(cols, x == null ? 0 : 2*x.length);
+			x = new double[size];
+			lb = new double[size];
+			ub = new double[size];
+			cost = new double[size];
+			state = new int[size];
+		}
+		if (basis == null || basis.length < rows) {
+			int size = Math.max(rows, basis == null ? 0 : 2*basis.length);
+			basis = new int[size];
+			binv = new double[size*size];
+			work = new double[size*size];
+			y = new double[size];
+			alpha = new double[size];
+			rhs = new double[size];
+			artRow = new int[size];
+			artSign = new double[size];
+		}
+	}
+
+	/**
+	 * Fills colRows/colVals with the nonzeros of column j on the active rows
+	 * @return the number of nonzeros
+	 */
+	private int column(int j) {
+		if (j < nSeg*G*T) {
+			int k = j/nSeg;
+			int t = k%T + 1;
+			int nz = 0;
+			colRows[nz] = t-1; colVals[nz++] = 1;
+			if (upRow[k] >= 0) { colRows[nz] = upRow[k]; colVals[nz++] = 1; }
+			if (downRow[k] >= 0) { colRows[nz] = downRow[k]; colVals[nz++] = -1; }
+			if (t < T) {
+				if (upRow[k+1] >= 0) { colRows[nz] = upRow[k+1]; colVals[nz++] = -1; }
+				if (downRow[k+1] >= 0) { colRows[nz] = downRow[k+1]; colVals[nz++] = 1; }
+			}
+			return nz;
+		}
+		if (j < nStruct) {
+			colRows[0] = j - nSeg*G*T; colVals[0] = 1;
+			return 1;
+		}
+		if (j < nStruct + nRamp) {
+			colRows[0] = T + j - nStruct; colVals[0] = 1;
+			return 1;
+		}
+		int a = j - nStruct - nRamp;
+		colRows[0] = artRow[a]; colVals[0] = artSign[a];
+		return 1;
+	}
+
+	private double rowRhs(int i) {
+		if (i < T) {
+			return gcp.getDemand()[i];
+		}
+		return gcp.getRamping()[rampIndex[i-T]/T];
+	}
+
+	/**
+	 * Sets up the columns for the current active rows, starting from the merit order dispatch, and runs both simplex phases
+	 * @return false if the dispatch is infeasible
+	 */
+	private boolean solveActive() {
+		m = T + nRamp;
+		allocate(m, nStruct + nRamp + m);
+		n = nStruct + nRamp;
+		double shed = gcp.getShedCost();
+
+		// Structural columns at their lower bounds
+		for (int g=1; g<=G; g++) {
+			for (int t=1; t<=T; t++) {
+				int k = (g-1)*T+t-1;
+				for (int s=1; s<=nSeg; s++) {
+					int j = k*nSeg + s-1;
+					state[j] = AT_LOWER;
+					lb[j] = 0;
+					x[j] = 0;
+					if (!feasibility) {
+						lb[j] = lo[k];
+						ub[j] = hi[k];
+						cost[j] = gcp.getProdCost()[g-1];
+						x[j] = lo[k];
+					} else if (s == 1) {			// below minP*U
+						ub[j] = lo[k];
+						cost[j] = -1;
+					} else if (s == 2) {			// inside [minP*U, maxP*U]
+						ub[j] = hi[k] - lo[k];
+						cost[j] = 0;
+					} else {						// above maxP*U
+						ub[j] = Double.POSITIVE_INFINITY;
+						cost[j] = 1;
+					}
+				}
+				if (feasibility) {
+					// Start at p = minP*U, where no slack is needed
+					state[k*nSeg] = AT_UPPER;
+					x[k*nSeg] = lo[k];
+				}
+			}
+		}
+		for (int t=1; t<=T; t++) {
+			int j = nSeg*G*T + t-1;
+			lb[j] = 0;
+			ub[j] = Double.POSITIVE_INFINITY;
+			cost[j] = feasibility ? 0 : shed;
+			x[j] = 0;
+			state[j] = AT_LOWER;
+		}
+		for (int r = 0; r < nRamp; r++) {
+			int j = nStruct + r;
+			lb[j] = 0;
+			ub[j] = Double.POSITIVE_INFINITY;
+			cost[j] = 0;
+			x[j] = 0;
+			state[j] = AT_LOWER;
+		}
+
+		// Merit order: fill each hour with the cheapest generators at full output while the demand is not met
+		if (!feasibility) {
+			for (int t=1; t<=T; t++) {
+				double rem = gcp.getDemand()[t-1];
+				for (int g=1; g<=G; g++) {
+					rem -= lo[(g-1)*T+t-1];
+				}
+				for (int i=1; i<=G && rem > 0; i++) {
+					int g = merit[i-1];
+					int k = (g-1)*T+t-1;
+					if (gcp.getProdCost()[g-1] >= shed) {
+						break;
+					}
+					double cap = hi[k] - lo[k];
+					if (cap <= rem) {
+						state[k] = AT_UPPER;
+						x[k] = hi[k];
+						rem -= cap;
+					}
+				}
+			}
+		}
+
+		// The shedding and slack columns form the starting basis, rows they cannot satisfy get an artificial
+		nArt = 0;
+		for (int i = 0; i < m; i++) {
+			double residual = rowRhs(i) - rowActivity(i);
+			int j = i < T ? nSeg*G*T + i : nStruct + i - T;
+			if (residual >= 0) {
+				setBasic(i, j, residual);
+			}
+			else {
+				artRow[nArt] = i;
+				artSign[nArt] = -1;
+				int a = n + nArt;
+				lb[a] = 0;
+				ub[a] = Double.POSITIVE_INFINITY;
+				cost[a] = 0;
+				state[a] = AT_LOWER;
+				nArt++;
+				setBasic(i, a, -residual);
+			}
+		}
+		n += nArt;
+		refactor();
+
+		// Phase one drives the artificials to zero
+		if (nArt > 0) {
+			phaseOne = true;
+			simplex();
+			phaseOne = false;
+			double infeasibility = 0;
+			for (int a = 0; a < nArt; a++) {
+				infeasibility += x[nStruct + nRamp + a];
+			}
+			if (infeasibility > 1e-7) {
+				return false;
+			}
+			for (int a = 0; a < nArt; a++) {
+				ub[nStruct + nRamp + a] = 0;
+			}
+		}
+		simplex();
+		return true;
+	}
+
+	private void setBasic(int i, int j, double value) {
+		basis[i] = j;
+		state[j] = i;
+		x[j] = value;
+	}
+
+	/**
+	 * @return the activity of row i from the nonbasic columns
+	 */
+	private double rowActivity(int i) {
+		if (i < T) {
+			double sum = 0;
+			for (int g=1; g<=G; g++) {
+				sum += pValue((g-1)*T+i);
+			}
+			return sum;
+		}
+		int k = rampIndex[i-T];
+		double prev = k%T == 0 ? 0 : pValue(k-1);
+		return rampDir[i-T]*(pValue(k) - prev);
+	}
+
+	private double pValue(int k) {
+		double p = 0;
+		for (int s=1; s<=nSeg; s++) {
+			p += x[k*nSeg + s-1];
+		}
+		return p;
+	}
+
+
+	// ========= Bounded primal simplex =========
+
+	/**
+	 * @return the cost of column j, phase one minimises the sum of the artificials
+	 */
+	private double costOf(int j) {
+		if (phaseOne) {
+			return j >= nStruct + nRamp ? 1 : 0;
+		}
+		return cost[j];
+	}
+
+	private void simplex() {
+		int pivots = 0;
+		int degenerate = 0;
+		int limit = 50*(n + m) + 1000;
+		for (int count = 0; ; count++) {
+			if (count > limit) {
+				throw new IllegalStateException("Dispatch simplex exceeded its iteration limit");
+			}
+			computeDuals();
+			boolean bland = degenerate > DEGENERATE;
+
+			// Pricing: Dantzig's rule, or the first improving column under Bland's rule
+			int q = -1;
+			double best = EPS;
+			for (int j = 0; j < n; j++) {
+				if (state[j] >= 0 || ub[j] - lb[j] <= 0) {
+					continue;
+				}
+				double d = reducedCost(j);
+				double gain = state[j] == AT_LOWER ? -d : d;
+				if (gain > best) {
+					q = j;
+					best = gain;
+					if (bland) {
+						break;
+					}
+				}
+			}
+			if (q < 0) {
+				return;
+			}
+			iterations++;
+
+			// alpha = B^-1 A_q
+			int nz = column(q);
+			for (int i = 0; i < m; i++) {
+				double sum = 0;
+				for (int e = 0; e < nz; e++) {
+					sum += binv[i*m + colRows[e]]*colVals[e];
+				}
+				alpha[i] = sum;
+			}
+			double dir = state[q] == AT_LOWER ? 1 : -1;
+
+			// Ratio test, the entering column may also just move to its other bound
+			double theta = ub[q] - lb[q];
+			int leave = -1;
+			for (int i = 0; i < m; i++) {
+				double delta = dir*alpha[i];
+				int j = basis[i];
+				double ratio;
+				if (delta > PIVOT) {
+					ratio = (x[j] - lb[j])/delta;
+				} else if (delta < -PIVOT && ub[j] < Double.POSITIVE_INFINITY) {
+					ratio = (ub[j] - x[j])/(-delta);
+				} else {
+					continue;
+				}
+				if (ratio < 0) {
+					ratio = 0;
+				}
+				if (ratio < theta - EPS || (leave >= 0 && ratio <= theta + EPS
+						&& (bland ? j < basis[leave] : Math.abs(alpha[i]) > Math.abs(alpha[leave])))) {
+					theta = Math.min(ratio, theta);
+					leave = i;
+				}
+			}
+			if (theta == Double.POSITIVE_INFINITY) {
+				throw new IllegalStateException("Dispatch subproblem is unbounded");
+			}
+			degenerate = theta <= EPS ? degenerate + 1 : 0;
+
+			// Moving along the edge
+			x[q] += dir*theta;
+			for (int i = 0; i < m; i++) {
+				x[basis[i]] -= dir*theta*alpha[i];
+			}
+			if (leave < 0) {
+				// Bound flip, the basis does not change
+				state[q] = state[q] == AT_LOWER ? AT_UPPER : AT_LOWER;
+				x[q] = state[q] == AT_LOWER ? lb[q] : ub[q];
+				continue;
+			}
+			int out = basis[leave];
+			if (dir*alpha[leave] > 0) {
+				state[out] = AT_LOWER;
+				x[out] = lb[out];
+			} else {
+				state[out] = AT_UPPER;
+				x[out] = ub[out];
+			}
+			basis[leave] = q;
+			state[q] = leave;
+
+			if (++pivots % REFACTOR == 0) {
+				refactor();
+			} else {
+				pivot(leave);
+			}
+		}
+	}
+
+	private void computeDuals() {
+		for (int r = 0; r < m; r++) {
+			y[r] = 0;
+		}
+		for (int i = 0; i < m; i++) {
+			double c = costOf(basis[i]);
+			if (c != 0) {
+				for (int r = 0; r < m; r++) {
+					y[r] += c*binv[i*m + r];
+				}
+			}
+		}
+	}
+
+	private double reducedCost(int j) {
+		int nz = column(j);
+		double d = costOf(j);
+		for (int e = 0; e < nz; e++) {
+			d -= y[colRows[e]]*colVals[e];
+		}
+		return d;
+	}
+
+	/**
+	 * Product form update of the basis inverse after alpha entered at position r
+	 */
+	private void pivot(int r) {
+		double pivot = alpha[r];
+		for (int c = 0; c < m; c++) {
+			binv[r*m + c] /= pivot;
+		}
+		for (int i = 0; i < m; i++) {
+			if (i != r && alpha[i] != 0) {
+				double factor = alpha[i];
+				for (int c = 0; c < m; c++) {
+					binv[i*m + c] -= factor*binv[r*m + c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Recomputes the basis inverse by Gauss-Jordan elimination and the basic values from the nonbasic ones
+	 */
+	private void refactor() {
+		Arrays.fill(work, 0, m*m, 0);
+		Arrays.fill(binv, 0, m*m, 0);
+		for (int i = 0; i < m; i++) {
+			int nz = column(basis[i]);
+			for (int e = 0; e < nz; e++) {
+				work[colRows[e]*m + i] = colVals[e];
+			}
+			binv[i*m + i] = 1;
+		}
+		for (int c = 0; c < m; c++) {
+			int p = c;
+			for (int r = c+1; r < m; r++) {
+				if (Math.abs(work[r*m + c]) > Math.abs(work[p*m + c])) {
+					p = r;
+				}
+			}
+			if (Math.abs(work[p*m + c]) < PIVOT) {
+				throw new IllegalStateException("Dispatch basis is singular");
+			}
+			if (p != c) {
+				swapRows(work, p, c);
+				swapRows(binv, p, c);
+			}
+			double pivot = work[c*m + c];
+			for (int k = 0; k < m; k++) {
+				work[c*m + k] /= pivot;
+				binv[c*m + k] /= pivot;
+			}
+			for (int r = 0; r < m; r++) {
+				double factor = work[r*m + c];
+				if (r != c && factor != 0) {
+					for (int k = 0; k < m; k++) {
+						work[r*m + k] -= factor*work[c*m + k];
+						binv[r*m + k] -= factor*binv[c*m + k];
+					}
+				}
+			}
+		}
+
+		// x_B = B^-1 (b - N x_N)
+		for (int i = 0; i < m; i++) {
+			rhs[i] = rowRhs(i);
+		}
+		for (int j = 0; j < n; j++) {
+			if (state[j] < 0 && x[j] != 0) {
+				int nz = column(j);
+				for (int e = 0; e < nz; e++) {
+					rhs[colRows[e]] -= colVals[e]*x[j];
+				}
+			}
+		}
+		for (int i = 0; i < m; i++) {
+			double sum = 0;
+			for (int r = 0; r < m; r++) {
+				sum += binv[i*m + r]*rhs[r];
+			}
+			x[basis[i]] = sum;
+		}
+	}
+
+	private void swapRows(double[] matrix, int a, int b) {
+		for (int k = 0; k < m; k++) {
+			double tmp = matrix[a*m + k];
+			matrix[a*m + k] = matrix[b*m + k];
+			matrix[b*m + k] = tmp;
+		}
+	}
+
+
+	// ========= Lazy ramp rows and solution extraction =========
+
+	private void extractPrimal() {
+		objValue = 0;
+		for (int g=1; g<=G; g++) {
+			for (int t=1; t<=T; t++) {
+				int k = (g-1)*T+t-1;
+				pSol[k] = Math.max(pValue(k), 0);
+				if (feasibility) {
+					objValue += Math.max(lo[k] - pSol[k], 0) + Math.max(pSol[k] - hi[k], 0);
+				} else {
+					objValue += gcp.getProdCost()[g-1]*pSol[k];
+				}
+			}
+		}
+		for (int t=1; t<=T; t++) {
+			lSol[t-1] = Math.max(x[nSeg*G*T + t-1], 0);
+			if (!feasibility) {
+				objValue += gcp.getShedCost()*lSol[t-1];
+			}
+		}
+	}
+
+	/**
+	 * Activates every ramp row the current dispatch violates
+	 * @return the number of rows added
+	 */
+	private int addViolatedRamps() {
+		int added = 0;
+		for (int g=1; g<=G; g++) {
+			for (int t=1; t<=T; t++) {
+				int k = (g-1)*T+t-1;
+				double change = pSol[k] - (t == 1 ? 0 : pSol[k-1]);
+				double ramp = gcp.getRamping()[g-1];
+				if (upRow[k] < 0 && change > ramp + 1e-7) {
+					upRow[k] = T + addRamp(k, 1);
+					added++;
+				}
+				if (downRow[k] < 0 && -change > ramp + 1e-7) {
+					downRow[k] = T + addRamp(k, -1);
+					added++;
+				}
+			}
+		}
+		return added;
+	}
+
+	private int addRamp(int k, int dir) {
+		if (nRamp == rampIndex.length) {
+			rampIndex = Arrays.copyOf(rampIndex, 2*nRamp);
+			rampDir = Arrays.copyOf(rampDir, 2*nRamp);
+		}
+		rampIndex[nRamp] = k;
+		rampDir[nRamp] = dir;
+		return nRamp++;
+	}
+
+	/**
+	 * Translates the row duals of the active LP into the duals of the full CPLEX model.
+	 * Ramp rows that were never activated are slack and get a zero dual. The duals of the min and max production constraints
+	 * are the reduced cost of p: a positive one belongs to the min production constraint, a negative one to the max production constraint
+	 */
+	private void extractDuals() {
+		computeDuals();
+		for (int t=1; t<=T; t++) {
+			demandDuals[t-1] = y[t-1];
+		}
+		for (int g=1; g<=G; g++) {
+			for (int t=1; t<=T; t++) {
+				int k = (g-1)*T+t-1;
+				rampUpDuals[k] = upRow[k] >= 0 ? y[upRow[k]] : 0;
+				rampDownDuals[k] = downRow[k] >= 0 ? y[downRow[k]] : 0;
+				// price of one more unit of p from the demand and ramp rows
+				double mu = y[t-1] + rampUpDuals[k] - rampDownDuals[k];
+				if (t < T) {
+					mu += (downRow[k+1] >= 0 ? y[downRow[k+1]] : 0) - (upRow[k+1] >= 0 ? y[upRow[k+1]] : 0);
+				}
+				double theta;
+				if (feasibility) {
+					theta = Math.max(-1, Math.min(1, -mu));
+				} else {
+					theta = gcp.getProdCost()[g-1] - mu;
+				}
+				minProDuals[k] = Math.max(theta, 0);
+				maxProDuals[k] = Math.min(theta, 0);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+public class FeasibilityCheck {
+	/**
+	 * Decides without an LP whether the second stage of a commitment is feasible, and if not, gives a sparse feasibility cut.
+	 * As shedding covers any missing demand, infeasibility only comes from production that cannot be brought low enough:
+	 * a generator whose minimum production cannot be reached within its ramp limits, or hours in which the least possible
+	 * production of the committed generators exceeds the demand.
+	 *
+	 * For every generator the ramp constraints are differences between neighbouring hours, so the lowest and highest
+	 * possible production in every hour follow from one pass forwards and one backwards over the minimum and maximum
+	 * production, with p_0 = 0 before the first hour. The lowest productions of a generator form a feasible dispatch on
+	 * their own, which makes the check exact. Violations within the tolerances of the LP are left to the LP.
+	 */
+
+	public enum Result { FEASIBLE, INFEASIBLE, UNKNOWN }
+
+	private static final double FEASIBLE = 1e-7;	// violations up to this are feasible, as in the feasibility LP
+	private static final double INFEASIBLE = 1e-6;	// violations above this are infeasible, in between the LP decides
+
+	private final GeneratorProblem gcp;
+	private final double[] low;		// in T, lowest production of the current generator
+	private final int[] lowFrom;	// in T, the hour whose minimum production gives low, 0 if it is zero
+	private final double[] high;	// in T, highest production of the current generator
+	private final int[] highFrom;	// in T, the hour whose maximum production gives high, 0 for p_0
+	private final double[] minTotal; // in T, sum of the lowest productions
+	private final int[] from;		// in G*T, lowFrom of every generator
+	private Cut cut;
+
+	public FeasibilityCheck(GeneratorProblem gcp) {
+		this.gcp = gcp;
+		this.low = new double[gcp.getT()];
+		this.lowFrom = new int[gcp.getT()];
+		this.high = new double[gcp.getT()];
+		this.highFrom = new int[gcp.getT()];
+		this.minTotal = new double[gcp.getT()];
+		this.from = new int[gcp.getnGenerators()*gcp.getT()];
+	}
+
+	/**
+	 * @return whether the second stage of U is feasible, INFEASIBLE comes with a cut from getCut()
+	 */
+	public Result check(Commitment U) {
+		int T = gcp.getT();
+		cut = null;
+		boolean unknown = false;
+		Arrays.fill(minTotal, 0);
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			double minP = gcp.getMinP()[g-1];
+			double maxP = gcp.getMaxP()[g-1];
+			double R = gcp.getRamping()[g-1];
+			// forward, p_0 = 0 bounds the first hour by R
+			double previousLow = 0, previousHigh = 0;
+			int previousLowFrom = 0, previousHighFrom = 0;
+			for (int t=1; t <= T; t++) {
+				double on = U.get(g, t);
+				low[t-1] = minP*on;
+				lowFrom[t-1] = on > 0 && minP > 0 ? t : 0;
+				if (previousLow - R > low[t-1]) {
+					low[t-1] = previousLow - R;
+					lowFrom[t-1] = previousLowFrom;
+				}
+				high[t-1] = maxP*on;
+				highFrom[t-1] = t;
+				if (previousHigh + R < high[t-1]) {
+					high[t-1] = previousHigh + R;
+					highFrom[t-1] = previousHighFrom;
+				}
+				previousLow = low[t-1];
+				previousLowFrom = lowFrom[t-1];
+				previousHigh = high[t-1];
+				previousHighFrom = highFrom[t-1];
+			}
+			// backward
+			for (int t=T-1; t >= 1; t--) {
+				if (low[t] - R > low[t-1]) {
+					low[t-1] = low[t] - R;
+					lowFrom[t-1] = lowFrom[t];
+				}
+				if (high[t] + R < high[t-1]) {
+					high[t-1] = high[t] + R;
+					highFrom[t-1] = highFrom[t];
+				}
+			}
+			// a generator that cannot reach its own minimum production
+			for (int t=1; t <= T; t++) {
+				double violation = low[t-1] - high[t-1];
+				if (violation > INFEASIBLE) {
+					cut = rampCut(g, lowFrom[t-1], highFrom[t-1]);
+					return Result.INFEASIBLE;
+				}
+				unknown |= violation > FEASIBLE;
+				if (low[t-1] > 0) {
+					minTotal[t-1] += low[t-1];
+					from[(g-1)*T+t-1] = lowFrom[t-1];
+				} else {
+					from[(g-1)*T+t-1] = 0;
+				}
+			}
+		}
+		// hours in which the least production exceeds the demand
+		double worst = 0;
+		int worstHour = 0;
+		for (int t=1; t <= T; t++) {
+			double violation = minTotal[t-1] - gcp.getDemand()[t-1];
+			if (violation > worst) {
+				worst = violation;
+				worstHour = t;
+			}
+		}
+		if (worstHour > 0 && worst > INFEASIBLE*Math.max(1, gcp.getDemand()[worstHour-1])) {
+			cut = demandCut(worstHour);
+			return Result.INFEASIBLE;
+		}
+		if (unknown || worst > FEASIBLE) {
+			return Result.UNKNOWN;
+		}
+		return Result.FEASIBLE;
+	}
+
+	/**
+	 * @return the feasibility cut of the last check that found U infeasible, without a phi term
+	 */
+	public Cut getCut() {
+		return cut;
+	}
+
+	// minP*u_s - maxP*u_s' <= R*|s-s'|, with u_0 the fixed p_0 = 0
+	private Cut rampCut(int g, int s, int sPrime) {
+		int T = gcp.getT();
+		double[] coefs = new double[gcp.getnGenerators()*T];
+		coefs[(g-1)*T+s-1] += gcp.getMinP()[g-1];
+		if (sPrime > 0) {
+			coefs[(g-1)*T+sPrime-1] -= gcp.getMaxP()[g-1];
+		}
+		return new Cut(-gcp.getRamping()[g-1]*Math.abs(s-sPrime), coefs, -1);
+	}
+
+	// sum over the generators of minP*u_s - R*|t-s| <= D_t, for the hour s giving each its lowest production in t
+	private Cut demandCut(int t) {
+		int T = gcp.getT();
+		double[] coefs = new double[gcp.getnGenerators()*T];
+		double constant = -gcp.getDemand()[t-1];
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			int s = from[(g-1)*T+t-1];
+			if (s > 0) {
+				coefs[(g-1)*T+s-1] += gcp.getMinP()[g-1];
+				constant -= gcp.getRamping()[g-1]*Math.abs(t-s);
+			}
+		}
+		return new Cut(constant, coefs, -1);
+	}
+
+}
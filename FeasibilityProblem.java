@@ -1,10 +1,13 @@
+import java.util.Arrays;
+
 import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
 import ilog.concert.IloRange;
 import ilog.cplex.IloCplex;
 
-public class FeasibilityProblem {
+public class FeasibilityProblem implements SubProblem {
 
 	
 	private GeneratorProblem gcp;
@@ -13,120 +16,166 @@ public class FeasibilityProblem {
 	private IloNumVar l[]; //shedding
     private IloNumVar v1[][]; //positive slack
     private IloNumVar v2[][]; //negative slack
-	private IloRange[] demandConstraints;
-	private IloRange[][] minProConstr;
-	private IloRange[][] maxProConstr;
-	private IloRange[][] RampUpConstr;
-	private IloRange[][] RampDownConstr;
+	private IloLPMatrix lp; // every row of the subproblem
+	private IloRange[] minProFlat; // rows of the matrix in (g-1)*T+(t-1) order
+	private IloRange[] maxProFlat;
+	private boolean dualsCached; // duals below belong to the last solve
+	private double[] demandDuals;
+	private double[] minProDuals;
+	private double[] maxProDuals;
+	private double[] rampUpDuals;
+	private double[] rampDownDuals;
+	private double[][] currentU; // first stage solution the bounds are currently set for
 
 	public FeasibilityProblem(GeneratorProblem gcp, double[][] U) throws IloException { 
 		//taking the problem and the first stage solution as input
+		this(gcp);
+		update(U);
+	}
+	
+	/**
+	 * Builds the subproblem once for the given problem with every generator switched off.
+	 * The first stage solution is passed in afterwards with update(U), so the same model can be re-solved every iteration.
+	 * All rows go to CPLEX as one LP matrix: the demand rows, then minimum and maximum production and ramping up and
+	 * down, every group in (g-1)*T+(t-1) order. Columns are p, v1 and v2 in the same order, then l
+	 */
+	public FeasibilityProblem(GeneratorProblem gcp) throws IloException {
 		// Initialising values
 		this.gcp = gcp;
-		this.p = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.l = new IloNumVar[gcp.getT()];
+		int G = gcp.getnGenerators();
+		int T = gcp.getT();
+		int GT = G*T;
 		this.model = new IloCplex(); 
-		this.v1 = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.v2 = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				p[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-				v1[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-				v2[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-			}
-			l[t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
+		IloNumVar[] columns = model.numVarArray(3*GT + T, 0, Double.POSITIVE_INFINITY);
+		this.p = new IloNumVar[G][T];
+		this.v1 = new IloNumVar[G][T];
+		this.v2 = new IloNumVar[G][T];
+		for (int g = 1; g <= G; g++) {
+			System.arraycopy(columns, (g-1)*T, p[g-1], 0, T);
+			System.arraycopy(columns, GT + (g-1)*T, v1[g-1], 0, T);
+			System.arraycopy(columns, 2*GT + (g-1)*T, v2[g-1], 0, T);
 		}
+		this.l = Arrays.copyOfRange(columns, 3*GT, 3*GT + T);
 		
 		//minimising over slack variables.
+		double[] slacks = new double[columns.length];
+		Arrays.fill(slacks, GT, 3*GT, 1);
 		IloLinearNumExpr obj = model.linearNumExpr();
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				obj.addTerm(1, v1[g-1][t-1]);
-				obj.addTerm(1, v2[g-1][t-1]);
-			}
-		}
+		obj.addTerms(slacks, columns);
         model.addMinimize(obj);
         
         // Constraints
+        RowMatrix rows = new RowMatrix(T + 4*GT);
         
         //Constraint 1e (demand constraint)
-        this.demandConstraints = new IloRange[gcp.getT()];
-        for (int t=1; t <= gcp.getT(); t++) {
-        	IloLinearNumExpr lhs = model.linearNumExpr();
-        	//sum
-        	for (int g=1; g<=gcp.getnGenerators(); g++) {
-        		lhs.addTerm(1, p[g-1][t-1]);
+        for (int t=1; t <= T; t++) {
+        	for (int g=1; g<=G; g++) {
+        		rows.term((g-1)*T+t-1, 1);
         	}
-        	lhs.addTerm(1, l[t-1]);
-        	demandConstraints[t-1] = model.addEq(lhs, gcp.getDemand()[t-1]);
+        	rows.term(3*GT+t-1, 1);
+        	rows.eq(gcp.getDemand()[t-1]);
         }
         
-        // Constraint 1f (minimum production)
-        this.minProConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-        for(int t=1; t<=gcp.getT(); t++) {
-        	for (int g=1; g<=gcp.getnGenerators(); g++) {
-        		IloLinearNumExpr lhs = model.linearNumExpr();
-        		lhs.addTerm(1, p[g-1][t-1]);
-        		lhs.addTerm(1, v1[g-1][t-1]);
-        		lhs.addTerm(-1, v2[g-1][t-1]);
-        		minProConstr[g-1][t-1]=model.addGe(lhs, gcp.getMinP()[g-1]*U[g-1][t-1]);
+        // Constraint 1f (minimum production), the bounds are set by update
+        for (int g=1; g<=G; g++) {
+        	for(int t=1; t<=T; t++) {
+        		rows.term((g-1)*T+t-1, 1);
+        		rows.term(GT + (g-1)*T+t-1, 1);
+        		rows.term(2*GT + (g-1)*T+t-1, -1);
+        		rows.ge(0);
         	}
         }
         
         // Constraint 1g (maximum production)
-        this.maxProConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-        for(int t=1; t<=gcp.getT(); t++) {
-        	for (int g=1; g<=gcp.getnGenerators(); g++) {
-        		IloLinearNumExpr lhs = model.linearNumExpr();
-        		lhs.addTerm(1, p[g-1][t-1]);
-        		lhs.addTerm(1, v1[g-1][t-1]);
-        		lhs.addTerm(-1, v2[g-1][t-1]);
-        		maxProConstr[g-1][t-1] = model.addLe(lhs, gcp.getMaxP()[g-1]*U[g-1][t-1]);
+        for (int g=1; g<=G; g++) {
+        	for(int t=1; t<=T; t++) {
+        		rows.term((g-1)*T+t-1, 1);
+        		rows.term(GT + (g-1)*T+t-1, 1);
+        		rows.term(2*GT + (g-1)*T+t-1, -1);
+        		rows.le(0);
         	}
         }
         
         // Constraint 1h (Ramp up constraint)
-        this.RampUpConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-        for(int t=1; t<=gcp.getT(); t++) {
-        	for (int g=1; g<=gcp.getnGenerators(); g++) {
-        		IloLinearNumExpr lhs = model.linearNumExpr();
-        		if (t<=1) {
-        			lhs.addTerm(1, p[g-1][t-1]);
+        for (int g=1; g<=G; g++) {
+        	for(int t=1; t<=T; t++) {
+        		rows.term((g-1)*T+t-1, 1);
+        		if (t > 1) {
+        			rows.term((g-1)*T+t-2, -1);
         		}
-        		else {
-	        		lhs.addTerm(1, p[g-1][t-1]);
-	        		lhs.addTerm(-1, p[g-1][t-2]);
-	        	}
-        		RampUpConstr[g-1][t-1] = model.addLe(lhs, gcp.getRamping()[g-1]);
+        		rows.le(gcp.getRamping()[g-1]);
         	}
         }
         
-     // Constraint 1i (Ramp Down constraint)
-        this.RampDownConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-        for(int t=1; t<=gcp.getT(); t++) {
-        	for (int g=1; g<=gcp.getnGenerators(); g++) {
-        		IloLinearNumExpr lhs = model.linearNumExpr();
-        		if (t<=1) {
-        			lhs.addTerm(-1, p[g-1][t-1]);
+        // Constraint 1i (Ramp Down constraint)
+        for (int g=1; g<=G; g++) {
+        	for(int t=1; t<=T; t++) {
+        		rows.term((g-1)*T+t-1, -1);
+        		if (t > 1) {
+        			rows.term((g-1)*T+t-2, 1);
         		}
-        		else {
-	        		lhs.addTerm(-1, p[g-1][t-1]);
-	        		lhs.addTerm(1, p[g-1][t-2]);
-	        	}
-        		RampDownConstr[g-1][t-1] = model.addLe(lhs, gcp.getRamping()[g-1]);
+        		rows.le(gcp.getRamping()[g-1]);
         	}
         }
-        
+        this.lp = rows.addTo(model, columns);
+		
+		// Only the right hand side changes between solves, so the previous basis stays dual feasible and dual simplex restarts from it
+		model.setOut(null);
+		model.setParam(IloCplex.Param.RootAlgorithm, IloCplex.Algorithm.Dual);
+		this.currentU = new double[G][T];
 		
+		// Views of the constraint groups of the matrix
+		IloRange[] ranges = lp.getRanges();
+		this.minProFlat = Arrays.copyOfRange(ranges, T, T + GT);
+		this.maxProFlat = Arrays.copyOfRange(ranges, T + GT, T + 2*GT);
 	}// Closing constructor
 	
+	/**
+	 * Rewrites the right hand side of the min and max production constraints for a new first stage solution.
+	 * Only the bounds that changed since the last call are passed on to CPLEX, the rest of the model and the basis are kept
+	 */
+	public void update(double[][] U) throws IloException {
+		for (int t=1; t <= gcp.getT(); t++) {
+			for (int g = 1; g <= gcp.getnGenerators(); g++) {
+				set(g, t, U[g-1][t-1]);
+			}
+		}
+	}
+	
+	/**
+	 * Rewrites the right hand side for a binary first stage solution, without building the matrix of U
+	 */
+	public void update(Commitment U) throws IloException {
+		for (int t=1; t <= gcp.getT(); t++) {
+			for (int g = 1; g <= gcp.getnGenerators(); g++) {
+				set(g, t, U.get(g, t));
+			}
+		}
+	}
+	
+	private void set(int g, int t, double value) throws IloException {
+		if (currentU[g-1][t-1] != value) {
+			minProFlat[(g-1)*gcp.getT()+t-1].setLB(gcp.getMinP()[g-1]*value);
+			maxProFlat[(g-1)*gcp.getT()+t-1].setUB(gcp.getMaxP()[g-1]*value);
+			currentU[g-1][t-1] = value;
+			dualsCached = false;
+		}
+	}
+	
     /**
      * Solves the subproblem
      */
     public void solve() throws IloException{
         model.setOut(null);
+        dualsCached = false;
+        BendersEvents.FeasibilityLP event = new BendersEvents.FeasibilityLP();
+        event.begin();
         model.solve();
+        event.end();
+        if (event.shouldCommit()) {
+        	event.objValue = model.getStatus() == IloCplex.Status.Optimal ? model.getObjValue() : Double.NaN;
+        	event.commit();
+        }
     }
     
     /**
@@ -137,79 +186,148 @@ public class FeasibilityProblem {
     }
     
     
- // get duals Duals
+    // get duals Duals
+    // All duals are fetched with one getDuals call for the matrix the first time they are needed after a solve,
+    // and kept in flat arrays indexed by (g-1)*T+(t-1)
+    private void cacheDuals() throws IloException{
+    	if (!dualsCached) {
+    		int T = gcp.getT();
+    		int GT = gcp.getnGenerators()*T;
+    		BendersEvents.DualExtraction event = new BendersEvents.DualExtraction();
+    		event.begin();
+    		double[] duals = model.getDuals(lp);
+    		demandDuals = Arrays.copyOfRange(duals, 0, T);
+    		minProDuals = Arrays.copyOfRange(duals, T, T + GT);
+    		maxProDuals = Arrays.copyOfRange(duals, T + GT, T + 2*GT);
+    		rampUpDuals = Arrays.copyOfRange(duals, T + 2*GT, T + 3*GT);
+    		rampDownDuals = Arrays.copyOfRange(duals, T + 3*GT, T + 4*GT);
+    		dualsCached = true;
+    		event.end();
+    		if (event.shouldCommit()) {
+    			event.feasibility = true;
+    			event.duals = duals.length;
+    			event.commit();
+    		}
+    	}
+    }
+    
+    public double[] getDemandDuals() throws IloException{
+    	cacheDuals();
+    	return demandDuals;
+    }
+    
+    public double[] getMinProDuals() throws IloException{
+    	cacheDuals();
+    	return minProDuals;
+    }
+    
+    public double[] getMaxProDuals() throws IloException{
+    	cacheDuals();
+    	return maxProDuals;
+    }
+    
+    public double[] getRampUpDuals() throws IloException{
+    	cacheDuals();
+    	return rampUpDuals;
+    }
+    
+    public double[] getRampDownDuals() throws IloException{
+    	cacheDuals();
+    	return rampDownDuals;
+    }
+    
     public double[] getDualsDemandConstraints() throws IloException{
-        double duals[] = new double[gcp.getT()];
-        for(int t = 1; t <= gcp.getT(); t++){
-            duals[t-1] = model.getDual(demandConstraints[t-1]);
-        }
-        return duals;
+        return getDemandDuals().clone();
     }
     
     public double[][] getminProConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(minProConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getMinProDuals());
     }
     
     public double[][] getmaxProConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(maxProConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getMaxProDuals());
     }
     
     public double[][] getRampUpConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(RampUpConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getRampUpDuals());
     }
     
     public double[][] getRampDownConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(RampDownConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getRampDownDuals());
+    }
+    
+    private double[][] toMatrix(double[] flat) {
+    	double matrix[][] = new double[gcp.getnGenerators()][gcp.getT()];
+    	for (int g=1; g<=gcp.getnGenerators(); g++) {
+    		System.arraycopy(flat, (g-1)*gcp.getT(), matrix[g-1], 0, gcp.getT());
+    	}
+    	return matrix;
     }
     
     
-    //Returning Constant and linear terms for the Extended BD feasibility cuts
+    // Returning Constant and linear terms for the Extended BD feasibility cuts
     public double getConstantTerm() throws IloException{
+    	cacheDuals();
     	double constant = 0;
     	for (int t=1; t<=gcp.getT(); t++) {
-    		constant += gcp.getDemand()[t-1]*model.getDual(demandConstraints[t-1]);
+    		constant += gcp.getDemand()[t-1]*demandDuals[t-1];
     		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			constant += gcp.getRamping()[g-1]*model.getDual(RampUpConstr[g-1][t-1]);
-    			constant += gcp.getRamping()[g-1]*model.getDual(RampDownConstr[g-1][t-1]);
+    			constant += gcp.getRamping()[g-1]*rampUpDuals[(g-1)*gcp.getT()+t-1];
+    			constant += gcp.getRamping()[g-1]*rampDownDuals[(g-1)*gcp.getT()+t-1];
     		}
     	}
     	return constant;
     }
     
     public IloLinearNumExpr getLinearTerm(IloNumVar u[][]) throws IloException{
+    	cacheDuals();
     	IloLinearNumExpr lhs = model.linearNumExpr();
     	for(int t=1; t<=gcp.getT();t++) {
     		for (int g=1; g<=gcp.getnGenerators();g++) {
-    			lhs.addTerm(model.getDual(minProConstr[g-1][t-1])*gcp.getMinP()[g-1], u[g-1][t-1]);
-    			lhs.addTerm(model.getDual(maxProConstr[g-1][t-1])*gcp.getMaxP()[g-1], u[g-1][t-1]);
+    			lhs.addTerm(minProDuals[(g-1)*gcp.getT()+t-1]*gcp.getMinP()[g-1], u[g-1][t-1]);
+    			lhs.addTerm(maxProDuals[(g-1)*gcp.getT()+t-1]*gcp.getMaxP()[g-1], u[g-1][t-1]);
     		}
     	}
     	return lhs;
     }
     
+    // Get the solution for l and p
+    public double[][] getSolutionP() throws IloException{
+    	double solution[][] = new double[gcp.getnGenerators()][gcp.getT()];
+    	for (int t=1; t<=gcp.getT(); t++) {
+    		for (int g=1; g<=gcp.getnGenerators(); g++) {
+    			solution[g-1][t-1] = model.getValue(p[g-1][t-1]);
+    		}
+    	}
+    	return solution;
+    }
+    
+    public double[] getSolutionL() throws IloException{
+    	double solution[] = new double[gcp.getT()];
+    	for (int t=1; t<=gcp.getT(); t++) {
+    		solution[t-1] = model.getValue(l[t-1]);
+    	}
+    	return solution;
+    }
+    
+    public void print() throws  IloException {
+    	System.out.println("// ========= Printing slacks ===========");
+        for(int i = 1; i<= gcp.getnGenerators(); i++){
+        	String str = "";
+        	for(int j = 1; j<=gcp.getT() ;j++){
+        		double slack = model.getValue(v1[i-1][j-1]) - model.getValue(v2[i-1][j-1]);
+        		if(slack != 0) {
+        			str = str+gcp.getName()[i-1]+"_"+j+" = "+slack+" ";
+        		}     
+        	}   
+        	if (str != "") {
+            	System.out.print("[ "+str+"] \n");
+            }
+        }
+    }
+    
+    public void end() {
+    	model.end();
+    }
     
 }
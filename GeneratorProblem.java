@@ -1,12 +1,28 @@
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class GeneratorProblem {
 	/**
 	 * A data-object for containing all the data related to a Generator Commitment Problem with simples getters. 
 	 * Values are final and defined at construction. 
-	 * The Constructor takes the input files and read them, setting up the problem object
+	 * The Constructor takes the input files and read them, setting up the problem object. A second constructor takes
+	 * the same data from memory, e.g. from the InstanceGenerator.
+	 * The files are read quietly with a TokenReader, unless a log stream is given, and a malformed file fails with the
+	 * line of the error. The columns of the generator file are found from its header, or are given explicitly.
+	 * A problem can also be written to and loaded from a binary snapshot, which skips the parsing altogether.
+	 * 
+	 * Optionally the demand is uncertain and given by a set of scenarios with probabilities. Every scenario is 
+	 * available as a problem object of its own, sharing the generator data, so the subproblems can be built from it.
 	 */
 	
 	
@@ -23,8 +39,32 @@ public class GeneratorProblem {
 	private final double shedCost;  // in T
 	private final double[] ramping;   // in G
 	private final String[] name; 	  // in G
+	private final double[] probability; // in S
+	private final GeneratorProblem[] scenarios; // in S, a deterministic problem is its own single scenario
 	
-	public GeneratorProblem(int nGenerator, String loadFile, String generatorFile, int TimeRange, double shedCost) throws FileNotFoundException {
+	public static final int SNAPSHOT_MAGIC = 0x53504347; // "GCPS" in the little endian snapshot
+	public static final int SNAPSHOT_VERSION = 1;
+	private static final int SNAPSHOT_HEADER = 6*4 + 8; // the ints up to the padding and the shed cost
+	
+	public GeneratorProblem(int nGenerator, String loadFile, String generatorFile, int TimeRange, double shedCost) throws IOException {
+		this(nGenerator, loadFile, generatorFile, TimeRange, shedCost, null);
+	}
+	
+	/**
+	 * @param scenarioFile demand scenarios, one per line with its probability followed by the demand in every hour, 
+	 * or null for the deterministic demand of the load file. The probabilities are scaled to sum to one.
+	 */
+	public GeneratorProblem(int nGenerator, String loadFile, String generatorFile, int TimeRange, double shedCost, String scenarioFile) throws IOException {
+		this(nGenerator, loadFile, generatorFile, TimeRange, shedCost, scenarioFile, null, null);
+	}
+	
+	/**
+	 * @param columns the columns of the generator file in order, named as in COLUMNS or "-" for a column that is skipped.
+	 * Null takes them from the header line if it names every column, and uses the order of COLUMNS otherwise
+	 * @param log where the data is printed while it is read, null reads quietly
+	 */
+	public GeneratorProblem(int nGenerator, String loadFile, String generatorFile, int TimeRange, double shedCost, String scenarioFile,
+			String[] columns, PrintStream log) throws IOException {
 		
 		// Initialising
 		this.nGenerators = nGenerator;
@@ -41,65 +81,393 @@ public class GeneratorProblem {
 		this.prodCost = new double[this.nGenerators];
 		
 		//Read Demand file
-		this.Demand = readDemand(loadFile, this.T);
+		this.Demand = readDemand(loadFile, this.T, log);
 		
 		//Reading datatable and assigning values
-		File dataFile = new File(generatorFile);
-		Scanner dataScanner = new Scanner(dataFile);
-		
-		System.out.println("Reading Data table:");
-		System.out.println(dataScanner.nextLine()); // printing title header
-		System.out.println(dataScanner.nextLine()); //printing header line
-		
-		//assign the value of each column to the data model for each generator and print the row
-		for(int g=1; g <=this.nGenerators; g++) {
-			System.out.print("Generator "+g+" = ");
-			this.name[g-1] = dataScanner.next();
-			System.out.print("["+this.name[g-1]);
-			this.minP[g-1] = Double.parseDouble(dataScanner.next());
-			System.out.print(", "+this.minP[g-1]);
-			this.maxP[g-1] = Double.parseDouble(dataScanner.next());
-			System.out.print(", "+this.maxP[g-1]);
-			this.startGenCost[g-1] = Double.parseDouble(dataScanner.next());
-			System.out.print(", "+this.startGenCost[g-1]);
-			this.OnCost[g-1] = Double.parseDouble(dataScanner.next());
-			System.out.print(", "+this.OnCost[g-1]);
-			this.ramping[g-1] = Double.parseDouble(dataScanner.next());
-			System.out.print(", "+this.ramping[g-1]);
-			this.minT[g-1] = dataScanner.nextInt();
-			System.out.print(", "+this.minT[g-1]);
-			this.maxT[g-1] = dataScanner.nextInt();
-			System.out.print(", "+this.maxT[g-1]);
-			this.prodCost[g-1] = Double.parseDouble(dataScanner.next());
-			System.out.print(", "+this.prodCost[g-1]+"] \n");
-			// The reason for the parseDouble is because the nextDouble() method had issues reading some inputs as doubles.
-		}
-		dataScanner.close(); // Closing Data table reader
-		System.out.println("=====Finished loading data===== \n");
+		try (TokenReader reader = new TokenReader(generatorFile)) {
+			String title = reader.nextLine();
+			String header = reader.nextLine();
+			int[] field = columns != null ? fields(columns, reader) : fields(header);
+			if (log != null) {
+				log.println("Reading Data table:");
+				log.println(title);
+				log.println(header);
+			}
+			
+			//assign the value of each column to the data model for each generator, one generator per line
+			for (int g=1; g <= this.nGenerators; g++) {
+				if (!reader.hasNext()) {
+					throw reader.error("expected "+this.nGenerators+" generators but found "+(g-1));
+				}
+				for (int k=1; k <= field.length; k++) {
+					if (!reader.hasNextOnLine()) {
+						throw reader.error("generator "+g+" has "+(k-1)+" columns instead of "+field.length);
+					}
+					String what = field[k-1] < 0 ? "column "+k : COLUMNS.get(field[k-1])+" of generator "+g;
+					switch (field[k-1]) {
+					case 0:	this.name[g-1] = reader.next(what); break;
+					case 1:	this.minP[g-1] = reader.nextDouble(what); break;
+					case 2:	this.maxP[g-1] = reader.nextDouble(what); break;
+					case 3:	this.startGenCost[g-1] = reader.nextDouble(what); break;
+					case 4:	this.OnCost[g-1] = reader.nextDouble(what); break;
+					case 5:	this.ramping[g-1] = reader.nextDouble(what); break;
+					case 6:	this.minT[g-1] = reader.nextInt(what); break;
+					case 7:	this.maxT[g-1] = reader.nextInt(what); break;
+					case 8:	this.prodCost[g-1] = reader.nextDouble(what); break;
+					default: reader.next(what);
+					}
+				}
+				reader.skipLine(); // columns that are not mapped
+				if (log != null) {
+					log.println("Generator "+g+" = ["+this.name[g-1]+", "+this.minP[g-1]+", "+this.maxP[g-1]+", "+this.startGenCost[g-1]
+							+", "+this.OnCost[g-1]+", "+this.ramping[g-1]+", "+this.minT[g-1]+", "+this.maxT[g-1]+", "+this.prodCost[g-1]+"] ");
+				}
+			}
+		}
+		if (log != null) {
+			log.println("=====Finished loading data===== \n");
+		}
 		
-
+		if (scenarioFile == null) {
+			this.probability = new double[] {1};
+			this.scenarios = new GeneratorProblem[] {this};
+		}
+		else {
+			double[][] scenarioDemand = readScenarios(scenarioFile, this.T, log);
+			this.probability = probabilities(scenarioDemand);
+			this.scenarios = scenarios(scenarioDemand);
+		}
+	}
+	
+	/**
+	 * A problem from data in memory, e.g. a synthetic instance of the InstanceGenerator. The arrays are kept, not copied
+	 * @param scenarioDemand rows of the probability of a scenario followed by its demand in every hour, as in the scenario
+	 * file, or null for the deterministic demand. The probabilities are scaled to sum to one.
+	 */
+	public GeneratorProblem(String[] name, double[] minP, double[] maxP, double[] startGenCost, double[] onCost, double[] ramping,
+			int[] minT, int[] maxT, double[] prodCost, double[] demand, double shedCost, double[][] scenarioDemand) {
+		this(name, minP, maxP, startGenCost, onCost, ramping, minT, maxT, prodCost, demand, shedCost,
+				scenarioDemand == null ? null : probabilities(scenarioDemand), scenarioDemand);
+	}
+	
+	// The same with the probabilities of the scenarios given as they are, null for the deterministic demand
+	private GeneratorProblem(String[] name, double[] minP, double[] maxP, double[] startGenCost, double[] onCost, double[] ramping,
+			int[] minT, int[] maxT, double[] prodCost, double[] demand, double shedCost, double[] probability, double[][] scenarioDemand) {
+		this.nGenerators = name.length;
+		this.T = demand.length;
+		this.name = name;
+		this.minP = minP;
+		this.maxP = maxP;
+		this.startGenCost = startGenCost;
+		this.OnCost = onCost;
+		this.ramping = ramping;
+		this.minT = minT;
+		this.maxT = maxT;
+		this.prodCost = prodCost;
+		this.Demand = demand;
+		this.shedCost = shedCost;
+		if (probability == null) {
+			this.probability = new double[] {1};
+			this.scenarios = new GeneratorProblem[] {this};
+		}
+		else {
+			this.probability = probability;
+			this.scenarios = scenarios(scenarioDemand);
+		}
+	}
+	
+	// The probabilities of the scenario rows, scaled to sum to one
+	private static double[] probabilities(double[][] scenarioDemand) {
+		double[] probability = new double[scenarioDemand.length];
+		double total = 0;
+		for (int s=1; s<=scenarioDemand.length; s++) {
+			total += scenarioDemand[s-1][0];
+		}
+		for (int s=1; s<=scenarioDemand.length; s++) {
+			probability[s-1] = scenarioDemand[s-1][0]/total;
+		}
+		return probability;
+	}
+	
+	// The problems of the scenario rows, sharing the generator data of this one
+	private GeneratorProblem[] scenarios(double[][] scenarioDemand) {
+		GeneratorProblem[] scenarios = new GeneratorProblem[scenarioDemand.length];
+		for (int s=1; s<=scenarioDemand.length; s++) {
+			scenarios[s-1] = new GeneratorProblem(this, Arrays.copyOfRange(scenarioDemand[s-1], 1, this.T+1));
+		}
+		return scenarios;
+	}
+	
+	// A single scenario of a problem, sharing the generator data
+	private GeneratorProblem(GeneratorProblem base, double[] Demand) {
+		this.T = base.T;
+		this.nGenerators = base.nGenerators;
+		this.startGenCost = base.startGenCost;
+		this.OnCost = base.OnCost;
+		this.prodCost = base.prodCost;
+		this.minT = base.minT;
+		this.maxT = base.maxT;
+		this.minP = base.minP;
+		this.maxP = base.maxP;
+		this.Demand = Demand;
+		this.shedCost = base.shedCost;
+		this.ramping = base.ramping;
+		this.name = base.name;
+		this.probability = new double[] {1};
+		this.scenarios = new GeneratorProblem[] {this};
+	}
+	
+	/**
+	 * The columns of the generator file, in the order they are read if the file does not name them
+	 */
+	public static final List<String> COLUMNS = List.of("name", "minP", "maxP", "startCost", "onCost", "ramping", "minT", "maxT", "prodCost");
+	
+	// Other names the header may use for the columns, without case and punctuation
+	private static final String[][] ALIASES = {
+			{"generator", "unit"}, {"pmin"}, {"pmax"}, {"startup", "startupcost", "startgencost"}, {"online", "onlinecost", "noloadcost"},
+			{"ramp", "r", "ramprate"}, {"minup", "minuptime", "tu"}, {"mindown", "mindowntime", "td"}, {"productioncost", "marginalcost"}};
+	
+	// The index in COLUMNS of a column name, -1 if it is not one of them
+	private static int field(String column) {
+		String key = column.toLowerCase().replaceAll("[^a-z0-9]", "");
+		for (int k=1; k <= COLUMNS.size(); k++) {
+			if (COLUMNS.get(k-1).toLowerCase().equals(key) || Arrays.asList(ALIASES[k-1]).contains(key)) {
+				return k-1;
+			}
+		}
+		return -1;
+	}
+	
+	// The field of every column of the header, or the order of COLUMNS if the header does not name each of them once
+	private static int[] fields(String header) {
+		String[] names = header.trim().split("\\s+");
+		int[] field = new int[names.length];
+		boolean[] found = new boolean[COLUMNS.size()];
+		for (int k=1; k <= names.length; k++) {
+			field[k-1] = field(names[k-1]);
+			if (field[k-1] >= 0) {
+				if (found[field[k-1]]) {
+					return defaultFields();
+				}
+				found[field[k-1]] = true;
+			}
+		}
+		for (boolean named : found) {
+			if (!named) {
+				return defaultFields();
+			}
+		}
+		return field;
 	}
 	
-	private static double[] readDemand(String fileName, int T) throws FileNotFoundException {
+	// The field of every explicitly given column, which have to name each field once
+	private static int[] fields(String[] columns, TokenReader reader) {
+		int[] field = new int[columns.length];
+		boolean[] found = new boolean[COLUMNS.size()];
+		for (int k=1; k <= columns.length; k++) {
+			field[k-1] = columns[k-1].equals("-") ? -1 : field(columns[k-1]);
+			if (field[k-1] < 0 && !columns[k-1].equals("-")) {
+				throw new IllegalArgumentException("Unknown generator column "+columns[k-1]+", the columns are "+COLUMNS);
+			}
+			if (field[k-1] >= 0 && found[field[k-1]]) {
+				throw new IllegalArgumentException("Generator column "+columns[k-1]+" is given twice");
+			}
+			if (field[k-1] >= 0) {
+				found[field[k-1]] = true;
+			}
+		}
+		for (int k=1; k <= found.length; k++) {
+			if (!found[k-1]) {
+				throw new IllegalArgumentException("Generator column "+COLUMNS.get(k-1)+" is missing");
+			}
+		}
+		return field;
+	}
+	
+	private static int[] defaultFields() {
+		int[] field = new int[COLUMNS.size()];
+		for (int k=1; k <= field.length; k++) {
+			field[k-1] = k-1;
+		}
+		return field;
+	}
+	
+	private static double[] readDemand(String fileName, int T, PrintStream log) throws IOException {
     	double[] Demand = new double[T];
-    	File file = new File(fileName);
-    	Scanner scanner = new Scanner(file);
-    	
-    	System.out.println("Reading Demand File:");
-    	System.out.println(scanner.nextLine());
-    	
-    	for (int i=1; i<=T; i++) {
-    		Demand[i-1] = scanner.nextDouble();
-    		System.out.println(Demand[i-1]);
+    	try (TokenReader reader = new TokenReader(fileName)) {
+    		String header = reader.nextLine();
+    		if (log != null) {
+    			log.println("Reading Demand File:");
+    			log.println(header);
+    		}
+    		for (int i=1; i<=T; i++) {
+    			if (!reader.hasNext()) {
+    				throw reader.error("expected the demand of "+T+" hours but found "+(i-1));
+    			}
+    			Demand[i-1] = reader.nextDouble("the demand of hour "+i);
+    			if (log != null) {
+    				log.println(Demand[i-1]);
+    			}
+    		}
     	}
-    	scanner.close();
     	return Demand;
-    	
     }
 	
+	// Every row holds the probability of a scenario followed by its demand in every hour
+	private static double[][] readScenarios(String fileName, int T, PrintStream log) throws IOException {
+		List<double[]> rows = new ArrayList<double[]>();
+		try (TokenReader reader = new TokenReader(fileName)) {
+			String header = reader.nextLine();
+			if (log != null) {
+				log.println("Reading Scenario File:");
+				log.println(header);
+			}
+			while (reader.hasNext()) {
+				int s = rows.size()+1;
+				double[] row = new double[T+1];
+				row[0] = reader.nextDouble("the probability of scenario "+s);
+				if (row[0] <= 0) {
+					throw reader.error("scenario "+s+" has no positive probability");
+				}
+				for (int i=1; i<=T; i++) {
+					row[i] = reader.nextDouble("the demand of scenario "+s+" in hour "+i);
+				}
+				rows.add(row);
+			}
+		}
+		if (rows.isEmpty()) {
+			throw new IllegalArgumentException("No scenarios in "+fileName);
+		}
+		if (log != null) {
+			log.println(rows.size()+" scenarios");
+		}
+		return rows.toArray(new double[rows.size()][]);
+	}
+	
 	
 	
 
+	/**
+	 * Writes the problem as a binary snapshot, which readSnapshot loads without parsing any text. The snapshot is a
+	 * header followed by the arrays of the problem, each contiguous and little endian:
+	 * the ints SNAPSHOT_MAGIC, SNAPSHOT_VERSION, G, T, S and a padding int, with S = 0 for the deterministic demand,
+	 * the double shedCost, the doubles minP, maxP, startGenCost, OnCost, ramping and prodCost in G, the demand in T,
+	 * the probabilities in S and the demand of every scenario in S*T, the ints minT and maxT in G,
+	 * and last the names, each as its length followed by its UTF-8 bytes.
+	 */
+	public void writeSnapshot(String fileName) throws IOException {
+		int G = this.nGenerators;
+		int S = this.scenarios[0] == this ? 0 : this.scenarios.length;
+		byte[][] names = new byte[G][];
+		int size = SNAPSHOT_HEADER + 8*(6*G + this.T + S + S*this.T) + 4*2*G;
+		for (int g=1; g <= G; g++) {
+			names[g-1] = this.name[g-1].getBytes(StandardCharsets.UTF_8);
+			size += 4 + names[g-1].length;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putInt(G).putInt(this.T).putInt(S).putInt(0);
+		buffer.putDouble(this.shedCost);
+		for (double[] values : new double[][] {this.minP, this.maxP, this.startGenCost, this.OnCost, this.ramping, this.prodCost, this.Demand}) {
+			put(buffer, values);
+		}
+		if (S > 0) {
+			put(buffer, this.probability);
+			for (int s=1; s <= S; s++) {
+				put(buffer, this.scenarios[s-1].Demand);
+			}
+		}
+		for (int[] values : new int[][] {this.minT, this.maxT}) {
+			buffer.asIntBuffer().put(values);
+			buffer.position(buffer.position() + 4*values.length);
+		}
+		for (byte[] bytes : names) {
+			buffer.putInt(bytes.length).put(bytes);
+		}
+		buffer.flip();
+		try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+	
+	/**
+	 * Loads a snapshot of writeSnapshot. The file is mapped rather than read, so the arrays are bulk copied from the page
+	 * cache, which many processes loading the same snapshot share.
+	 */
+	public static GeneratorProblem readSnapshot(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+			if (buffer.remaining() < SNAPSHOT_HEADER || buffer.getInt() != SNAPSHOT_MAGIC) {
+				throw new IllegalArgumentException(fileName+" is not a snapshot of a GeneratorProblem");
+			}
+			int version = buffer.getInt();
+			if (version != SNAPSHOT_VERSION) {
+				throw new IllegalArgumentException(fileName+" is a snapshot of version "+version+" instead of "+SNAPSHOT_VERSION);
+			}
+			int G = buffer.getInt();
+			int T = buffer.getInt();
+			int S = buffer.getInt();
+			buffer.getInt();
+			if (G < 1 || T < 1 || S < 0 || SNAPSHOT_HEADER + 8L*(6L*G + T + S + (long) S*T) + 4L*2*G > buffer.capacity()) {
+				throw new IllegalArgumentException(fileName+" is not a complete snapshot of "+G+" generators, "+T+" hours and "+S+" scenarios");
+			}
+			double shedCost = buffer.getDouble();
+			double[] minP = doubles(buffer, G);
+			double[] maxP = doubles(buffer, G);
+			double[] startGenCost = doubles(buffer, G);
+			double[] onCost = doubles(buffer, G);
+			double[] ramping = doubles(buffer, G);
+			double[] prodCost = doubles(buffer, G);
+			double[] demand = doubles(buffer, T);
+			double[] probability = null;
+			double[][] scenarioDemand = null;
+			if (S > 0) {
+				probability = doubles(buffer, S);
+				// in the rows of the scenario file, whose first column is not used as the probabilities are given
+				scenarioDemand = new double[S][T+1];
+				for (int s=1; s <= S; s++) {
+					buffer.asDoubleBuffer().get(scenarioDemand[s-1], 1, T);
+					buffer.position(buffer.position() + 8*T);
+				}
+			}
+			int[] minT = ints(buffer, G);
+			int[] maxT = ints(buffer, G);
+			String[] name = new String[G];
+			try {
+				for (int g=1; g <= G; g++) {
+					byte[] bytes = new byte[buffer.getInt()];
+					buffer.get(bytes);
+					name[g-1] = new String(bytes, StandardCharsets.UTF_8);
+				}
+			} catch (BufferUnderflowException | NegativeArraySizeException e) {
+				throw new IllegalArgumentException(fileName+" is not a complete snapshot, the names of the generators are cut off");
+			}
+			return new GeneratorProblem(name, minP, maxP, startGenCost, onCost, ramping, minT, maxT, prodCost, demand, shedCost,
+					probability, scenarioDemand);
+		}
+	}
+	
+	private static void put(ByteBuffer buffer, double[] values) {
+		buffer.asDoubleBuffer().put(values);
+		buffer.position(buffer.position() + 8*values.length);
+	}
+	
+	private static double[] doubles(ByteBuffer buffer, int n) {
+		double[] values = new double[n];
+		buffer.asDoubleBuffer().get(values);
+		buffer.position(buffer.position() + 8*n);
+		return values;
+	}
+	
+	private static int[] ints(ByteBuffer buffer, int n) {
+		int[] values = new int[n];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4*n);
+		return values;
+	}
+	
 	/**
 	 * @return the Time frame, e.g. 24 hours
 	 */
@@ -191,6 +559,27 @@ public class GeneratorProblem {
 		return name;
 	}
 	
+	/**
+	 * @return the number of demand scenarios, 1 for a deterministic problem
+	 */
+	public int getnScenarios() {
+		return scenarios.length;
+	}
+	
+	/**
+	 * @return the probability of every scenario, in S
+	 */
+	public double[] getProbability() {
+		return probability;
+	}
+	
+	/**
+	 * @return the deterministic problem of scenario s, for s from 1 to the number of scenarios
+	 */
+	public GeneratorProblem getScenario(int s) {
+		return scenarios[s-1];
+	}
+	
 	
 	
 	
@@ -0,0 +1,205 @@
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Random;
+
+public class InstanceGenerator {
+	/**
+	 * Seeded synthetic instances of the Generator Commitment Problem at any G and T, for scaling studies beyond the
+	 * 31 generators and 24 hours of generators.txt and loads.txt. The same seed, G, T and number of scenarios always
+	 * give the same instance, in memory as a GeneratorProblem or written in the formats of the generator, load and
+	 * scenario files. Every value is rounded before it is used, so loading the written files gives the same problem.
+	 *
+	 * The fleet has three cost tiers. Base units are large and cheap to run but expensive to start, with long up and
+	 * down times. Mid merit units lie in between, and peakers are small, expensive to run and cheap and quick to start.
+	 * Every unit can ramp at least its minimum production in an hour, since p_0 = 0 and it has to reach minP when it
+	 * starts and leave it when it stops. The tiers are shuffled, so no part of the file is a single tier.
+	 *
+	 * The load follows a daily curve with its low at night and its high in the late afternoon, a lower level on the
+	 * weekend days of every week and autocorrelated noise. Its peak leaves a reserve margin over the capacity of the
+	 * fleet. Scenarios are further noisy realisations of the same curve with equal probabilities.
+	 */
+
+	private static final double BASE = 0.2;		// share of base units in the fleet
+	private static final double MID = 0.4;		// share of mid merit units, the rest are peakers
+	private static final double RESERVE = 0.15;	// capacity over the peak demand
+	private static final double NOISE = 0.02;	// standard deviation of the relative load noise
+	private static final double SCENARIO_NOISE = 0.05; // standard deviation of the relative scenario noise
+	
+	// Ranges of the base, mid merit and peak tier, each as its low and high: maxP, minP as a share of maxP, ramping as
+	// a share of maxP, production cost, online cost, startup cost, minT and maxT
+	private static final String[] TIER = {"Base", "Mid", "Peak"};
+	private static final double[][] RANGES = {
+			{250, 450, 0.4, 0.6, 0.3, 0.3, 8, 14, 200, 400, 2000, 5000, 6, 10, 4, 8},
+			{100, 250, 0.3, 0.45, 0.5, 0.5, 16, 26, 80, 200, 500, 1500, 3, 5, 2, 4},
+			{20, 100, 0.1, 0.3, 1, 1, 30, 42, 10, 60, 20, 200, 1, 2, 1, 1}};
+
+	private final long seed;
+
+	// The instance of the last generate, in the order of the generator file
+	private String[] name;
+	private double[] minP, maxP, startGenCost, onCost, ramping, prodCost;
+	private int[] minT, maxT;
+	private double[] demand;			// in T
+	private double[][] scenarioDemand;	// in S, probability followed by the demand in T, null without scenarios
+
+	public InstanceGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return the deterministic instance with G generators and T hours
+	 */
+	public GeneratorProblem problem(int G, int T, double shedCost) {
+		return problem(G, T, 0, shedCost);
+	}
+
+	/**
+	 * @param S number of demand scenarios, 0 for the deterministic demand
+	 */
+	public GeneratorProblem problem(int G, int T, int S, double shedCost) {
+		generate(G, T, S);
+		return new GeneratorProblem(name, minP, maxP, startGenCost, onCost, ramping, minT, maxT, prodCost, demand, shedCost, scenarioDemand);
+	}
+
+	/**
+	 * Writes the instance in the formats GeneratorProblem reads
+	 * @param scenarioFile written only if S > 0
+	 */
+	public void write(int G, int T, int S, String generatorFile, String loadFile, String scenarioFile) throws FileNotFoundException {
+		generate(G, T, S);
+		try (PrintWriter out = new PrintWriter(generatorFile)) {
+			out.println("Synthetic fleet of "+G+" generators, seed "+seed);
+			out.println("Name minP maxP startCost onCost ramping minT maxT prodCost");
+			for (int g=1; g <= G; g++) {
+				out.println(name[g-1]+" "+minP[g-1]+" "+maxP[g-1]+" "+startGenCost[g-1]+" "+onCost[g-1]+" "+ramping[g-1]
+						+" "+minT[g-1]+" "+maxT[g-1]+" "+prodCost[g-1]);
+			}
+		}
+		try (PrintWriter out = new PrintWriter(loadFile)) {
+			out.println("Synthetic demand of "+T+" hours, seed "+seed);
+			for (int t=1; t <= T; t++) {
+				out.println(demand[t-1]);
+			}
+		}
+		if (S > 0) {
+			try (PrintWriter out = new PrintWriter(scenarioFile)) {
+				out.println("Probability followed by the demand in every hour, seed "+seed);
+				for (int s=1; s <= S; s++) {
+					StringBuilder row = new StringBuilder().append(scenarioDemand[s-1][0]);
+					for (int t=1; t <= T; t++) {
+						row.append(' ').append(scenarioDemand[s-1][t]);
+					}
+					out.println(row);
+				}
+			}
+		}
+	}
+
+	private void generate(int G, int T, int S) {
+		if (G < 1 || T < 1 || S < 0) {
+			throw new IllegalArgumentException("An instance needs at least one generator and one hour");
+		}
+		Random random = new Random(seed);
+		name = new String[G];
+		minP = new double[G];
+		maxP = new double[G];
+		startGenCost = new double[G];
+		onCost = new double[G];
+		ramping = new double[G];
+		prodCost = new double[G];
+		minT = new int[G];
+		maxT = new int[G];
+		int base = Math.max((int) Math.round(BASE*G), 1);
+		int mid = Math.min((int) Math.round(MID*G), G - base);
+		// Shuffled positions of the units, the first base of them are base units and the next mid are mid merit
+		int[] position = new int[G];
+		for (int g=1; g <= G; g++) {
+			position[g-1] = g;
+		}
+		for (int g=G; g > 1; g--) {
+			int k = random.nextInt(g);
+			int swap = position[g-1];
+			position[g-1] = position[k];
+			position[k] = swap;
+		}
+		double capacity = 0;
+		for (int k=1; k <= G; k++) {
+			int g = position[k-1];
+			if (k <= base) {
+				unit(g, 1, k, random, T);
+			} else if (k <= base + mid) {
+				unit(g, 2, k-base, random, T);
+			} else {
+				unit(g, 3, k-base-mid, random, T);
+			}
+			capacity += maxP[g-1];
+		}
+		double peak = capacity/(1 + RESERVE);
+		double[] curve = new double[T];
+		double noise = 0;
+		for (int t=1; t <= T; t++) {
+			noise = 0.7*noise + NOISE*random.nextGaussian();
+			curve[t-1] = peak*shape(t)*(1 + noise);
+		}
+		demand = new double[T];
+		for (int t=1; t <= T; t++) {
+			demand[t-1] = Math.max(Math.round(curve[t-1]), 0);
+		}
+		scenarioDemand = null;
+		if (S > 0) {
+			scenarioDemand = new double[S][T+1];
+			for (int s=1; s <= S; s++) {
+				scenarioDemand[s-1][0] = 1;
+				noise = 0;
+				for (int t=1; t <= T; t++) {
+					noise = 0.7*noise + SCENARIO_NOISE*random.nextGaussian();
+					scenarioDemand[s-1][t] = Math.max(Math.round(curve[t-1]*(1 + noise)), 0);
+				}
+			}
+		}
+	}
+
+	// Draws generator g as the k'th unit of its tier, with the ramp at least minP
+	private void unit(int g, int tier, int k, Random random, int T) {
+		double[] range = RANGES[tier-1];
+		name[g-1] = TIER[tier-1]+k;
+		maxP[g-1] = Math.round(uniform(random, range[0], range[1]));
+		minP[g-1] = Math.round(maxP[g-1]*uniform(random, range[2], range[3]));
+		ramping[g-1] = Math.max(Math.round(maxP[g-1]*uniform(random, range[4], range[5])), minP[g-1]);
+		prodCost[g-1] = cents(uniform(random, range[6], range[7]));
+		onCost[g-1] = cents(uniform(random, range[8], range[9]));
+		startGenCost[g-1] = cents(uniform(random, range[10], range[11]));
+		minT[g-1] = Math.min((int) range[12] + random.nextInt((int) (range[13] - range[12]) + 1), T);
+		maxT[g-1] = Math.min((int) range[14] + random.nextInt((int) (range[15] - range[14]) + 1), T);
+	}
+
+	// Relative load in hour t: low at night, high in the late afternoon and lower on the last two days of every week
+	private static double shape(int t) {
+		int hour = (t-1) % 24;
+		int day = (t-1) / 24 % 7;
+		double daily = 0.75 - 0.2*Math.cos(2*Math.PI*(hour-4)/24) + 0.08*Math.exp(-(hour-19)*(hour-19)/6.0);
+		return daily/1.03*(day >= 5 ? 0.85 : 1);
+	}
+
+	private static double uniform(Random random, double low, double high) {
+		return low + (high - low)*random.nextDouble();
+	}
+
+	private static double cents(double value) {
+		return Math.round(value*100)/100.0;
+	}
+
+	/**
+	 * Writes an instance, with the arguments G T seed generatorFile loadFile and optionally S scenarioFile
+	 */
+	public static void main(String[] args) throws FileNotFoundException {
+		if (args.length != 5 && args.length != 7) {
+			System.out.println("Usage: InstanceGenerator <G> <T> <seed> <generator file> <load file> [<S> <scenario file>]");
+			return;
+		}
+		int S = args.length == 7 ? Integer.parseInt(args[5]) : 0;
+		new InstanceGenerator(Long.parseLong(args[2])).write(Integer.parseInt(args[0]), Integer.parseInt(args[1]), S,
+				args[3], args[4], args.length == 7 ? args[6] : null);
+	}
+
+}
@@ -7,29 +7,41 @@ import ilog.concert.IloException;
 public class Main {
 
 	public static void main(String[] args) throws IOException, IloException {
+		// Options starting with -- run a single algorithm without any prompts, see RunConfig
+		if (RunConfig.isBatch(args)) {
+			new BatchRunner(RunConfig.parse(args)).run();
+			return;
+		}
+		
 		// Setting Default Data
 		String GeneratorFile = "generators.txt";
 		String LoadFile = "loads.txt";
 		int G = 31;
 		int T = 24;
 		double shed = 46;
+		boolean dispatch = false; // solving the subproblems with the pure Java dispatch solver instead of CPLEX
 		
 		//Alternatively use main arguments as input
-		if (args.length == 5) {
+		if (args.length == 5 || args.length == 6) {
 			GeneratorFile = args[2];
 			LoadFile = args[1];
 			G = Integer.parseInt(args[0]);
 			T = Integer.parseInt(args[3]);
 			shed = Double.parseDouble(args[4]);
+			if (args.length == 6) {
+				dispatch = args[5].equals("dispatch");
+			}
 		}
 		else {
 			System.out.println("No 5 arguments were supplied, thus performing default example \n"
-					+ "Alternatively supply: Number of Generators, Demand File, Data Table, Number of Hours and shed cost");
+					+ "Alternatively supply: Number of Generators, Demand File, Data Table, Number of Hours and shed cost \n"
+					+ "and optionally 'dispatch' to solve the subproblems with the pure Java dispatch solver \n"
+					+ "For a run without prompts use the options below instead \n" + RunConfig.USAGE);
 			
 		}
 		
 		// The constructor for the problem will take the input files and read them
-		GeneratorProblem gcp = new GeneratorProblem(G, LoadFile, GeneratorFile, T, shed);
+		GeneratorProblem gcp = new GeneratorProblem(G, LoadFile, GeneratorFile, T, shed, null, null, System.out);
 		
 		// Want to perform a direct solve, without Benders?
 		System.out.println("Press Enter to continue or Enter 'y' if you want to calculate the optimal value with a generic direct model");
@@ -58,68 +70,43 @@ public class Main {
 		System.out.println("\nPress enter to continue and start the Benders Decompostion algorithm");
 		System.in.read();
 		
-		// Bender's Decomposition
-		MasterProblem mp = new MasterProblem(gcp);
+		// Bender's Decomposition, see BendersSolver for the loop between master and subproblems
+		BendersSolver bd = new BendersSolver(gcp, dispatch);
+		bd.setListener(iteration -> System.out.println("Iteration "+iteration.getIteration()+": lower bound "+iteration.getLowerBound()
+				+", upper bound "+iteration.getUpperBound()+", "+iteration.getCuts()+" cuts, "+iteration.getSeconds()+" seconds"));
 		long startTime = System.currentTimeMillis();
-		boolean solved = false;
-		int iter = 0;
-		while (!solved) {
-			mp.solve();
-						
-			FeasibilityProblem fsp = new FeasibilityProblem(gcp, mp.getU());
-			fsp.solve();
-			
-			//Checking Feasibility
-			if(fsp.getObjValue()>1e-7) {
-				// The second stage resulted infeasible, so we will add the feasibility cut and return to top of loop
-				mp.addFeasibilityCut(fsp.getDualsDemandConstraints(), fsp.getminProConstraints(), 
-						fsp.getmaxProConstraints(), fsp.getRampUpConstraints(), fsp.getRampDownConstraints());
-			}
-			
-			else {	
-			// solve Optimality Subproblem checking for optimality 
-			OptimalityProblem osp = new OptimalityProblem(gcp, mp.getU());
-			osp.solve();
-			//System.out.println("printing osp value: "+osp.getObjValue());
-			//System.out.println("printing phi value: "+mp.getPhi());
-			
-			if( mp.getPhi()+(1e-7) >= osp.getObjValue()) {
-				// If true, then we solved the problem!
-				long stopTime = System.currentTimeMillis();
-				double elapsedTime = (stopTime - startTime);
-				
-				System.out.println("// ======  The Bender's Decomposition has converged in "+iter+" iterations ========");
-				System.out.println(" ====> Optimal Value = "+mp.getObjValue()+"\n");
-				System.out.println("The Bender's Decomposition finished in "+elapsedTime/1000+" seconds");
-				solved = true;
-				
-				System.out.println("Wanna print solution? Enter 'y' or enter to continue");
-				try {
-					char answer = br.readLine().charAt(0);
-					if (answer == 'y') {
-						osp.print();
-						mp.print();
-					}
-				} catch(Exception e) {}
-				
-								
-				mp.end();
+		BendersSolver.Status status = bd.solve();
+		long stopTime = System.currentTimeMillis();
+		double elapsedTime = (stopTime - startTime);
+		
+		if (status == BendersSolver.Status.OPTIMAL) {
+			System.out.println("// ======  The Bender's Decomposition has converged in "+bd.getIterations()+" iterations ========");
+			System.out.println(" ====> Optimal Value = "+bd.getUpperBound()+"\n");
+		} else {
+			System.out.println("// ======  The Bender's Decomposition stopped with status "+status+" after "+bd.getIterations()+" iterations ========");
+			if (bd.getUpperBound() == Double.POSITIVE_INFINITY) {
+				System.out.println(" ====> No solution was found\n");
+			} else {
+				System.out.println(" ====> Best objective = "+bd.getUpperBound()+", gap "+bd.getGap()+"\n");
 			}
-			else {
-				// Solution is not optimal and we must introduce a cut with the duals from the Optimality subproblem
-				mp.addOptimalityCut(osp.getDualsDemandConstraints(), osp.getminProConstraints(), 
-						osp.getmaxProConstraints(), osp.getRampUpConstraints(), osp.getRampDownConstraints());
+		}
+		System.out.println("The Bender's Decomposition finished in "+elapsedTime/1000+" seconds");
+		
+		System.out.println("Wanna print solution? Enter 'y' or enter to continue");
+		try {
+			char answer = br.readLine().charAt(0);
+			if (answer == 'y') {
+				bd.print();
 			}
-			osp.end();
-			}// if feasible
-			iter++;
-		}//while
+		} catch(Exception e) {}
+		bd.end();
 		
 		
 		// Now solving the same Problem adding cuts to the local nodes of the B&B tree, avoiding to resolve the entire MP every iteration
 		
 		System.out.println("======  Performing The Extended Bender's Decomposition ========");
 		MasterProblem mpBB = new MasterProblem(gcp);
+		mpBB.setDispatchSolver(dispatch);
 		long BBstartTime = System.currentTimeMillis();
 		mpBB.solveBB();
 		long BBstopTime = System.currentTimeMillis();
@@ -128,6 +115,7 @@ public class Main {
 		//mpBB.print();
 		double BBelapsedTime = (BBstopTime - BBstartTime);
 	     System.out.println("The extended Bender's Decomposition finished in "+BBelapsedTime/1000+" seconds");
+	     System.out.println("The callback used "+mpBB.getPoolSize()+" subproblem sets, reused "+mpBB.getPoolReuses()+" times");
 	     System.out.println("Wanna print solution? Enter 'y' or enter to terminate");
 	     try {
 				char answer = br.readLine().charAt(0);
@@ -1,6 +1,16 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ilog.concert.IloConversion;
 import ilog.concert.IloException;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
 import ilog.cplex.IloCplex;
 
 
@@ -9,126 +19,305 @@ import ilog.cplex.IloCplex;
 public class MasterProblem {
 	
 
+	static final double MAX_TIME_LIMIT = 1e75; // largest time limit CPLEX accepts, in seconds
+	
 	private final GeneratorProblem gcp;
 	private IloCplex model;
 	private IloNumVar c[][]; //startup cost
 	private IloNumVar u[][]; // on/off status
-	private IloNumVar phi; 
-	private double[]  L; 	// final shedding solution
-	private double[][] P; 	// final production solution
+	private IloNumVar uFlat[]; // u in (g-1)*T+(t-1) order, for adding cut terms in one call
+	private IloNumVar vFlat[], wFlat[]; // startup and shutdown in the compact formulation, null otherwise
+	private IloNumVar phi[]; // production cost, one per scenario in the multi-cut master and one in total otherwise
+	private double weight[]; // objective coefficients of phi
+	private final boolean multiCut;
+	private final Formulation formulation;
+	private double[]  L; 	// final shedding solution of the first scenario
+	private double[][] P; 	// final production solution of the first scenario
+	private SubproblemPool pools[]; // subproblems shared by the callback threads, one pool per scenario
+	private SubproblemCache cache; // subproblem results of the extended BD by commitment pattern
+	private int cacheSize = 1024;
+	private IloConversion relaxation; // makes u continuous while it is part of the model
+	private boolean feasibilityCheck = true; // decide feasibility combinatorially before solving the feasibility LP
+	private boolean meritOrder = true;	// optimality cuts in closed form when the ramps do not couple the hours
+	private boolean dispatch;	// solve the subproblems with the pure Java dispatch solver
+	private double tolerance = 1e-7; // optimality tolerance of the extended BD
+	private boolean heuristic = false; // priority list start and rounding heuristic in the extended BD
+	private double heuristicObjValue = Double.POSITIVE_INFINITY; // objective of the priority list start
+	private int heuristicSolutions;	// rounded node solutions the heuristic callback gave CPLEX
+	private final Map<Cut, Cut> cuts; // every cut of the classic BD, active or not, for finding duplicates
+	private int maxCutAge = 0;	// slack solves after which a cut leaves the model, 0 keeps every cut
+	private int duplicateCuts, purgedCuts, reactivatedCuts;
+	private final IloCplex.Aborter aborter; // stops a running solve from another thread
+	private BendersListener listener;	// told about every callback of the extended BD, null for none
+	private int callbacks;				// calls of the callback of the extended BD
+	private int lazyCuts;				// cuts the callback of the extended BD added
+	private long solveStart;			// of the running extended BD, in nanoseconds
+	
+	/**
+	 * Is told about every incumbent CPLEX finds while it solves the master, on the thread of the search
+	 */
+	public interface IncumbentListener {
+		void incumbent(Commitment U, double[] phi) throws IloException;
+	}
+	
+	/**
+	 * How the minimum up and down times enter the master.
+	 * CLASSIC is the original formulation 1b-1d on c and u, whose rows 1c and 1d sum over j from t to TU(t) and TD(t).
+	 * COMPACT adds startup and shutdown variables v and w with v_t - w_t = u_t - u_t-1 and the turn on and turn off
+	 * inequalities of Rajan and Takriti, sum of v over the last minT hours <= u_t and sum of w over the last maxT hours
+	 * <= 1 - u_t. These describe the convex hull of the minimum up and down time polytope, so the LP relaxation is as
+	 * tight as it gets. They are the textbook up and down times, which do not forbid exactly the same commitments as 1c and 1d
+	 */
+	public enum Formulation { CLASSIC, COMPACT }
 	
 	public MasterProblem(GeneratorProblem gcp) throws IloException {
+		this(gcp, false);
+	}
+	
+	public MasterProblem(GeneratorProblem gcp, boolean multiCut) throws IloException {
+		this(gcp, multiCut, Formulation.CLASSIC);
+	}
+	
+	/**
+	 * @param multiCut one phi and one optimality cut per demand scenario, instead of a single cut on the expected production cost
+	 * @param formulation of the minimum up and down times
+	 */
+	public MasterProblem(GeneratorProblem gcp, boolean multiCut, Formulation formulation) throws IloException {
 		// Initialising data
 		this.gcp = gcp;
+		this.multiCut = multiCut;
+		this.formulation = formulation;
 		this.model = new IloCplex();
-		this.c = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.u = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
+		int G = gcp.getnGenerators();
+		int T = gcp.getT();
+		int GT = G*T;
+		this.cuts = new LinkedHashMap<Cut, Cut>();
+		this.aborter = new IloCplex.Aborter();
+		model.use(aborter);
 		
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				c[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-				u[g-1][t-1] = model.intVar(0, 1);
-			}
+		// c and u are created flat in (g-1)*T+(t-1) order, the 2D arrays are views of them
+		IloNumVar[] cFlat = model.numVarArray(GT, 0, Double.POSITIVE_INFINITY);
+		this.uFlat = model.numVarArray(GT, 0, 1, IloNumVarType.Int);
+		this.c = new IloNumVar[G][T];
+		this.u = new IloNumVar[G][T];
+		for (int g = 1; g <= G; g++) {
+			System.arraycopy(cFlat, (g-1)*T, c[g-1], 0, T);
+			System.arraycopy(uFlat, (g-1)*T, u[g-1], 0, T);
 		}
 		// As the Production costs cannot be negative, we can bind phi at zero
-		phi = model.numVar(0, Double.POSITIVE_INFINITY);
+		if (multiCut) {
+			phi = model.numVarArray(gcp.getnScenarios(), 0, Double.POSITIVE_INFINITY);
+			weight = gcp.getProbability();
+		} else {
+			phi = new IloNumVar[] {model.numVar(0, Double.POSITIVE_INFINITY)};
+			weight = new double[] {1};
+		}
+		// Columns of the LP matrix, c in 0..GT-1 and u in GT..2GT-1, then v and w in the compact formulation
+		IloNumVar[] columns = new IloNumVar[formulation == Formulation.COMPACT ? 4*GT : 2*GT];
+		System.arraycopy(cFlat, 0, columns, 0, GT);
+		System.arraycopy(uFlat, 0, columns, GT, GT);
+		if (formulation == Formulation.COMPACT) {
+			// Integral with u, as a startup or shutdown is forced by the change of u and bounded by the rows below
+			this.vFlat = model.numVarArray(GT, 0, 1);
+			this.wFlat = model.numVarArray(GT, 0, 1);
+			System.arraycopy(vFlat, 0, columns, 2*GT, GT);
+			System.arraycopy(wFlat, 0, columns, 3*GT, GT);
+		}
 		
 		// Creating Objective function
-		IloLinearNumExpr obj = model.linearNumExpr();
 		//online and startup costs
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				obj.addTerm(1, c[g-1][t-1]);
-				obj.addTerm(gcp.getOnCost()[g-1], u[g-1][t-1]);
-			}
+		double[] costs = new double[columns.length];
+		Arrays.fill(costs, 0, GT, 1);
+		for (int g = 1; g <= G; g++) {
+			Arrays.fill(costs, GT + (g-1)*T, GT + g*T, gcp.getOnCost()[g-1]);
 		}
-		obj.addTerm(1, phi);
+		IloLinearNumExpr obj = model.linearNumExpr();
+		obj.addTerms(costs, columns);
+		obj.addTerms(weight, phi);
 		// minimize the objective function
         model.addMinimize(obj);
         
-     // Create constraints
-        // Constraint 1b
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				IloLinearNumExpr rhs = model.linearNumExpr();
-				lhs.addTerm(1, c[g-1][t-1]);
-				if( t == 1) { // t_0 is zero
-					rhs.addTerm(gcp.getStartGenCost()[g-1], u[g-1][t-1]);
-				}
-				else {
-				rhs.addTerm(gcp.getStartGenCost()[g-1], u[g-1][t-1]);
-				rhs.addTerm(-gcp.getStartGenCost()[g-1], u[g-1][t-2]);
+     // Create constraints, collected in one matrix and added to the model at once
+        RowMatrix rows = new RowMatrix(formulation == Formulation.COMPACT ? 4*GT : 3*GT);
+        if (formulation == Formulation.COMPACT) {
+        	compactRows(rows);
+        } else {
+        	classicRows(rows);
+        }
+		rows.addTo(model, columns);
+		
+	}// Constructor
+	
+	/**
+	 * The rows 1b-1d of the classic formulation, on the columns c and u
+	 */
+	private void classicRows(RowMatrix rows) {
+		int G = gcp.getnGenerators();
+		int T = gcp.getT();
+		int GT = G*T;
+		// Constraint 1b
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
+				rows.term((g-1)*T+t-1, 1);
+				rows.term(GT + (g-1)*T+t-1, -gcp.getStartGenCost()[g-1]);
+				if (t > 1) { // t_0 is zero
+					rows.term(GT + (g-1)*T+t-2, gcp.getStartGenCost()[g-1]);
 				}
-				model.addGe(lhs, rhs);
+				rows.ge(0);
 			}
 		}
 		//Constraint 1c
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				//sum
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
+				//sum, repeated terms are merged by the matrix
 				for (int j = t; j <= TU(t, g); j++) {
-					if (j <= 1) {
-						lhs.addTerm(1, u[g-1][t-1]);
-						lhs.addTerm(-1, u[g-1][j-1]);
+					rows.term(GT + (g-1)*T+t-1, 1);
+					rows.term(GT + (g-1)*T+j-1, -1);
+					if (j > 1) {
+						rows.term(GT + (g-1)*T+j-2, 1);
 					}
-					else {
-						lhs.addTerm(1, u[g-1][t-1]);
-						lhs.addTerm(-1, u[g-1][j-1]);
-						lhs.addTerm(1, u[g-1][j-2]);
-					}					
 				}
-				model.addGe(lhs, 0);
+				rows.ge(0);
 			}
 		}
 		//Constraint 1d
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= G; g++) {
 				//sum
 				for (int j = t; j <= TD(t, g); j++) {
 					if (j <= 1) {
-						lhs.addTerm(1, u[g-1][t-1]);
-						lhs.addTerm(-1, u[g-1][j-1]);
+						rows.term(GT + (g-1)*T+t-1, 1);
+						rows.term(GT + (g-1)*T+j-1, -1);
 					}
 					else {
-						lhs.addTerm(-1, u[g-1][t-1]);
-						lhs.addTerm(1, u[g-1][j-1]);
-						lhs.addTerm(-1, u[g-1][j-2]);
-					}					
+						rows.term(GT + (g-1)*T+t-1, -1);
+						rows.term(GT + (g-1)*T+j-1, 1);
+						rows.term(GT + (g-1)*T+j-2, -1);
+					}
 				}
 				//moving the summation of ones to the rhs. Sum of ones from t to TD is TD-t+1
-				model.addGe(lhs, -(TD(t,g)-t+1));
+				rows.ge(-(TD(t,g)-t+1));
 			}
 		}
-		
-	}// Constructor
+	}
+	
+	/**
+	 * The rows of the compact formulation, on the columns c, u, v and w
+	 */
+	private void compactRows(RowMatrix rows) {
+		int T = gcp.getT();
+		int GT = gcp.getnGenerators()*T;
+		for (int g = 1; g <= gcp.getnGenerators(); g++) {
+			int up = Math.max(gcp.getMinT()[g-1], 1);
+			int down = Math.max(gcp.getMaxT()[g-1], 1);
+			for (int t=1; t <= T; t++) {
+				int k = (g-1)*T+t-1;
+				// c_t >= S*v_t, replacing 1b
+				rows.term(k, 1);
+				rows.term(2*GT + k, -gcp.getStartGenCost()[g-1]);
+				rows.ge(0);
+				// v_t - w_t = u_t - u_t-1, with u_0 = 0
+				rows.term(2*GT + k, 1);
+				rows.term(3*GT + k, -1);
+				rows.term(GT + k, -1);
+				if (t > 1) {
+					rows.term(GT + k-1, 1);
+				}
+				rows.eq(0);
+				// turn on: a startup in the last minT hours keeps the generator on
+				for (int i = Math.max(t-up+1, 1); i <= t; i++) {
+					rows.term(2*GT + (g-1)*T+i-1, 1);
+				}
+				rows.term(GT + k, -1);
+				rows.le(0);
+				// turn off: a shutdown in the last maxT hours keeps the generator off
+				for (int i = Math.max(t-down+1, 1); i <= t; i++) {
+					rows.term(3*GT + (g-1)*T+i-1, 1);
+				}
+				rows.term(GT + k, 1);
+				rows.le(1);
+			}
+		}
+	}
+	
+	public Formulation getFormulation() {
+		return formulation;
+	}
 	
 	
 	// Utility Methods
 	/**
-	 * @return the phi
+	 * @return the phi, the expected production cost over the scenarios in the multi-cut master
 	 * @throws IloException 
 	 * @throws  
 	 */
 	public double getPhi() throws IloException {
-		return model.getValue(phi);
+		return scalProd(weight, model.getValues(phi));
+	}
+	
+	/**
+	 * @return the phi of scenario s in the multi-cut master, or the single phi otherwise
+	 */
+	public double getPhi(int s) throws IloException {
+		return model.getValue(phi[multiCut ? s-1 : 0]);
+	}
+	
+	public boolean isMultiCut() {
+		return multiCut;
+	}
+	
+	private static double scalProd(double[] a, double[] b) {
+		double sum = 0;
+		for (int i=1; i<=a.length; i++) {
+			sum += a[i-1]*b[i-1];
+		}
+		return sum;
 	}
 	
 	/**
 	 * @return the solution from first stage problem; i.e. what generators are operational
 	 */
 	public double[][] getU() throws IloException{
+		return getCommitment().toArray();
+	}
+	
+	/**
+	 * @return the fractional solution of the relaxed first stage problem
+	 */
+	public double[][] getRelaxedU() throws IloException {
+		double[] values = model.getValues(uFlat);
 		double[][] U = new double[gcp.getnGenerators()][gcp.getT()];
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				U[g-1][t-1] = (int) model.getValue(u[g-1][t-1]);
-			}
+		for (int g = 1; g <= gcp.getnGenerators(); g++) {
+			System.arraycopy(values, (g-1)*gcp.getT(), U[g-1], 0, gcp.getT());
 		}
 		return U;
 	}
 	
+	/**
+	 * Relaxes u to continuous values between 0 and 1, so the following solves are LPs. Cuts added meanwhile stay
+	 * in the model when integrality is restored
+	 */
+	public void relax() throws IloException {
+		if (relaxation == null) {
+			relaxation = model.conversion(uFlat, IloNumVarType.Float);
+			model.add(relaxation);
+		}
+	}
+	
+	public void restoreIntegrality() throws IloException {
+		if (relaxation != null) {
+			model.remove(relaxation);
+			relaxation = null;
+		}
+	}
+	
+	/**
+	 * @return the solution from first stage problem as a commitment, read from CPLEX in one call
+	 */
+	public Commitment getCommitment() throws IloException {
+		return Commitment.of(model.getValues(uFlat), gcp.getnGenerators(), gcp.getT());
+	}
+	
 	// TU and TD methods
 	private int TU (int t, int gen) {
 		return Math.min(t+gcp.getMinT()[gen-1]-1,gcp.getT());
@@ -140,7 +329,114 @@ public class MasterProblem {
 	
     public void solve() throws IloException{
         model.setOut(null);
+        // An abort requested after the previous solve ended is not meant for this one
+        aborter.clear();
+        BendersEvents.MasterSolve event = new BendersEvents.MasterSolve();
+        event.begin();
         model.solve();
+        record(event, false);
+    }
+    
+    private void record(BendersEvents.MasterSolve event, boolean extended) throws IloException {
+    	event.end();
+    	if (event.shouldCommit()) {
+    		event.relaxed = relaxation != null;
+    		event.extended = extended;
+    		event.status = String.valueOf(model.getStatus());
+    		event.objValue = model.getStatus() == IloCplex.Status.Optimal || model.getStatus() == IloCplex.Status.Feasible
+    				? model.getObjValue() : Double.NaN;
+    		event.nodes = model.getNnodes64();
+    		event.rows = model.getNrows();
+    		event.commit();
+    	}
+    }
+    
+    /**
+     * @return the number of rows of the master, its constraints and the cuts in the model
+     */
+    public int getRows() {
+    	return model.getNrows();
+    }
+    
+    /**
+     * @return the branch and bound nodes of the last solve
+     */
+    public long getNodes() {
+    	return model.getNnodes64();
+    }
+    
+    /**
+     * Lets the solution pool keep the k best solutions CPLEX finds during a solve, below 2 the pool is left as it is
+     */
+    public void setSolutionPool(int k) throws IloException {
+    	if (k > 1) {
+    		model.setParam(IloCplex.Param.MIP.Pool.Capacity, k);
+    		// a full pool replaces its solution with the worst objective
+    		model.setParam(IloCplex.Param.MIP.Pool.Replace, 1);
+    	}
+    }
+    
+    /**
+     * @return the pool indices, from 0 as in CPLEX, of up to k solutions of the last solve with distinct commitments,
+     * best objective first
+     */
+    public int[] getPoolSolutions(int k) throws IloException {
+    	int n = model.getSolnPoolNsolns();
+    	Integer[] order = new Integer[n];
+    	double[] objValue = new double[n];
+    	for (int i=1; i<=n; i++) {
+    		order[i-1] = i-1;
+    		objValue[i-1] = model.getObjValue(i-1);
+    	}
+    	Arrays.sort(order, (a, b) -> Double.compare(objValue[a], objValue[b]));
+    	List<Integer> chosen = new ArrayList<Integer>();
+    	Set<Commitment> seen = new HashSet<Commitment>();
+    	for (int i=1; i<=n && chosen.size() < k; i++) {
+    		if (seen.add(getCommitment(order[i-1]))) {
+    			chosen.add(order[i-1]);
+    		}
+    	}
+    	int[] indices = new int[chosen.size()];
+    	for (int i=1; i<=indices.length; i++) {
+    		indices[i-1] = chosen.get(i-1);
+    	}
+    	return indices;
+    }
+    
+    /**
+     * @return the commitment of solution i of the pool
+     */
+    public Commitment getCommitment(int i) throws IloException {
+    	return Commitment.of(model.getValues(uFlat, i), gcp.getnGenerators(), gcp.getT());
+    }
+    
+    /**
+     * @return the value of every phi in solution i of the pool
+     */
+    public double[] getPhiValues(int i) throws IloException {
+    	return model.getValues(phi, i);
+    }
+    
+    /**
+     * Stops the running solve as soon as possible, e.g. when cuts arrived that cut off its incumbents.
+     * May be called from any thread, the status of the stopped solve is not optimal
+     */
+    public void abort() {
+    	aborter.abort();
+    }
+    
+    /**
+     * Reports every call of the callback of the extended BD to the listener, null for none
+     */
+    public void setListener(BendersListener listener) {
+    	this.listener = listener;
+    }
+    
+    /**
+     * Reports every incumbent of the following solves to the listener, which runs inside the search and should return quickly
+     */
+    public void setIncumbentListener(IncumbentListener listener) throws IloException {
+    	model.use(new Incumbents(listener));
     }
     
 	
@@ -164,66 +460,360 @@ public class MasterProblem {
     }
     
     public void end(){
+        aborter.end();
         model.end();
     }
     
     public double getObjValue() throws IloException {
     	return model.getObjValue();
     }
+    
+    /**
+     * @return the best lower bound CPLEX proved for the master problem
+     */
+    public double getBestObjValue() throws IloException {
+    	return model.getBestObjValue();
+    }
+    
+    /**
+     * @return the online and startup costs of the current solution, i.e. the objective without phi
+     */
+    public double getFixedCost() throws IloException {
+    	return model.getObjValue() - getPhi();
+    }
+    
+    /**
+     * @return the online and startup costs of U, the first stage part of the objective
+     */
+    public double getFixedCost(Commitment U) {
+    	double cost = 0;
+    	for (int g = 1; g <= gcp.getnGenerators(); g++) {
+    		for (int t=1; t <= gcp.getT(); t++) {
+    			cost += gcp.getOnCost()[g-1]*U.get(g, t);
+    			// constraint 1b with u_0 = 0, c is at its lower bound in an optimal solution
+    			cost += gcp.getStartGenCost()[g-1]*Math.max(U.get(g, t) - (t > 1 ? U.get(g, t-1) : 0), 0);
+    		}
+    	}
+    	return cost;
+    }
+    
+    /**
+     * Gives U to CPLEX as a starting solution, with the startup costs it implies and phi at the production costs Q
+     * of the scenarios. Valid cuts never exceed Q, so the start stays feasible while cuts are added
+     */
+    public void addMIPStart(Commitment U, double[] Q) throws IloException {
+    	model.addMIPStart(startVariables(), startValues(U, Q));
+    }
+    
+    // u, c and phi, then v and w in the compact formulation, in the order of startValues
+    private IloNumVar[] startVariables() {
+    	int GT = gcp.getnGenerators()*gcp.getT();
+    	IloNumVar[] vars = new IloNumVar[2*GT + phi.length + (vFlat == null ? 0 : 2*GT)];
+    	System.arraycopy(uFlat, 0, vars, 0, GT);
+    	for (int g = 1; g <= gcp.getnGenerators(); g++) {
+    		System.arraycopy(c[g-1], 0, vars, GT + (g-1)*gcp.getT(), gcp.getT());
+    	}
+    	System.arraycopy(phi, 0, vars, 2*GT, phi.length);
+    	if (vFlat != null) {
+    		System.arraycopy(vFlat, 0, vars, 2*GT + phi.length, GT);
+    		System.arraycopy(wFlat, 0, vars, 3*GT + phi.length, GT);
+    	}
+    	return vars;
+    }
+    
+    private double[] startValues(Commitment U, double[] Q) {
+    	int T = gcp.getT();
+    	int GT = gcp.getnGenerators()*T;
+    	double[] values = new double[2*GT + phi.length + (vFlat == null ? 0 : 2*GT)];
+    	for (int g = 1; g <= gcp.getnGenerators(); g++) {
+    		for (int t=1; t <= T; t++) {
+    			double change = U.get(g, t) - (t > 1 ? U.get(g, t-1) : 0);
+    			values[(g-1)*T+t-1] = U.get(g, t);
+    			values[GT + (g-1)*T+t-1] = gcp.getStartGenCost()[g-1]*Math.max(change, 0);
+    			if (vFlat != null) {
+    				values[2*GT + phi.length + (g-1)*T+t-1] = Math.max(change, 0);
+    				values[3*GT + phi.length + (g-1)*T+t-1] = Math.max(-change, 0);
+    			}
+    		}
+    	}
+    	if (multiCut) {
+    		System.arraycopy(Q, 0, values, 2*GT, Q.length);
+    	} else {
+    		values[2*GT] = scalProd(gcp.getProbability(), Q);
+    	}
+    	return values;
+    }
+    
+    public IloCplex.Status getStatus() throws IloException {
+    	return model.getStatus();
+    }
+    
+    /**
+     * Sets the number of threads CPLEX may use, 0 lets CPLEX decide
+     */
+    public void setThreads(int threads) throws IloException {
+    	model.setParam(IloCplex.Param.Threads, threads);
+    }
+    
+    /**
+     * Sets the time limit in seconds for the following solves, an infinite one removes the limit
+     */
+    public void setTimeLimit(double seconds) throws IloException {
+    	// CPLEX takes at most MAX_TIME_LIMIT, its own default, which is no limit in practice
+    	model.setParam(IloCplex.Param.TimeLimit, Math.min(Math.max(seconds, 0), MAX_TIME_LIMIT));
+    }
+    
+    /**
+     * Sets the relative MIP gap at which CPLEX stops
+     */
+    public void setMIPGap(double gap) throws IloException {
+    	model.setParam(IloCplex.Param.MIP.Tolerances.MIPGap, gap);
+    }
+    
+    /**
+     * Sets the absolute tolerance of the optimality test phi >= subproblem value in the extended BD
+     */
+    public void setTolerance(double tolerance) {
+    	this.tolerance = tolerance;
+    }
 	
     // Set Optimality Cuts (feasibility cuts are omitted as they are redundant in this case)
     //  u^j(b-Gx) - phi <= 0
-    public void addOptimalityCut(double[] demandDuals, double[][] minProDuals, double[][] maxProDuals,
-    							 double[][] RampUpDuals, double[][] RampDownDuals) throws IloException {
-    	IloLinearNumExpr lhs = model.linearNumExpr();
-    	// adding constants
-    	double constant = 0;
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		constant += gcp.getDemand()[t-1]*demandDuals[t-1];
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			constant += gcp.getRamping()[g-1]*RampDownDuals[g-1][t-1];
-    			constant += gcp.getRamping()[g-1]*RampUpDuals[g-1][t-1];
-    		}
+    public void addOptimalityCut(SubProblem osp) throws IloException {
+    	addOptimalityCut(new SubProblem[] {osp});
+    }
+    
+    /**
+     * Adds the cut of scenario s on its own phi, in the multi-cut master
+     */
+    public void addOptimalityCut(SubProblem osp, int s) throws IloException {
+    	addOptimalityCut(scenarioCut(osp, s), s);
+    }
+    
+    /**
+     * Adds the cuts of all scenarios, one per scenario in the multi-cut master and their expectation otherwise
+     */
+    public void addOptimalityCut(SubProblem[] osp) throws IloException {
+    	Cut[] cuts = new Cut[osp.length];
+    	for (int s=1; s<=osp.length; s++) {
+    		cuts[s-1] = scenarioCut(osp[s-1], s);
     	}
-    	lhs.setConstant(constant);
-    	// adding u-terms
-    	for(int t=1; t<=gcp.getT();t++) {
-    		for (int g=1; g<=gcp.getnGenerators();g++) {
-    			lhs.addTerm(minProDuals[g-1][t-1]*gcp.getMinP()[g-1], u[g-1][t-1]);
-    			lhs.addTerm(maxProDuals[g-1][t-1]*gcp.getMaxP()[g-1], u[g-1][t-1]);
+    	addOptimalityCut(cuts);
+    }
+    
+    /**
+     * Adds the scenario cut of scenario s on its own phi, in the multi-cut master
+     * @return false if the cut was already in the model, so the master did not change
+     */
+    public boolean addOptimalityCut(Cut cut, int s) throws IloException {
+    	if (!multiCut) {
+    		throw new IllegalStateException("The single cut master takes the cut of all scenarios together");
+    	}
+    	return addCut(cut.withPhi(s-1));
+    }
+    
+    /**
+     * Adds the scenario cuts of all scenarios, one per scenario in the multi-cut master and their expectation otherwise
+     * @return false if every cut was already in the model, so the master did not change
+     */
+    public boolean addOptimalityCut(Cut[] cuts) throws IloException {
+    	if (multiCut) {
+    		boolean changed = false;
+    		for (int s=1; s<=cuts.length; s++) {
+    			changed |= addOptimalityCut(cuts[s-1], s);
     		}
+    		return changed;
     	}
-    	lhs.addTerm(-1, phi);
-    	//IloRange cut = 
-    			model.addLe(lhs, 0);
-        //System.out.println("Adding cut "+cut.toString());  	
+    	return addCut(expectedCut(cuts));
     }
     
  // Set Feasibility Cuts 
-    //  u^j(b-Gx) - phi <= 0
-    public void addFeasibilityCut(double[] demandDuals, double[][] minProDuals, double[][] maxProDuals,
-    							 double[][] RampUpDuals, double[][] RampDownDuals) throws IloException {
-    	IloLinearNumExpr lhs = model.linearNumExpr();
+    //  u^j(b-Gx) <= 0
+    public void addFeasibilityCut(SubProblem fsp) throws IloException {
+    	addFeasibilityCut(fsp, 1);
+    }
+    
+    /**
+     * Adds the feasibility cut of scenario s
+     */
+    public void addFeasibilityCut(SubProblem fsp, int s) throws IloException {
+    	addFeasibilityCut(scenarioCut(fsp, s));
+    }
+    
+    /**
+     * Adds a scenario cut of a feasibility subproblem
+     */
+    public void addFeasibilityCut(Cut cut) throws IloException {
+    	addCut(cut);
+    }
+    
+    /**
+     * Adds a cut to the model unless it is already known. A known cut which was purged is put back instead,
+     * as the subproblem only returns it again when the master violates it
+     * @return false if the cut was already in the model, so the master did not change
+     */
+    private boolean addCut(Cut cut) throws IloException {
+    	BendersEvents.CutAdd event = new BendersEvents.CutAdd();
+    	event.begin();
+    	Cut known = cuts.get(cut);
+    	boolean changed = true;
+    	if (known == null) {
+    		cuts.put(cut, cut);
+    		activate(cut);
+    	} else {
+    		duplicateCuts++;
+    		if (!known.isActive()) {
+    			activate(known);
+    			reactivatedCuts++;
+    		} else {
+    			changed = false;
+    		}
+    	}
+    	record(event, cut, false, known != null);
+    	return changed;
+    }
+    
+    private static void record(BendersEvents.CutAdd event, Cut cut, boolean lazy, boolean duplicate) {
+    	event.end();
+    	if (event.shouldCommit()) {
+    		event.optimality = cut.isOptimality();
+    		event.lazy = lazy;
+    		event.duplicate = duplicate;
+    		event.nonzeros = cut.getIndex().length;
+    		event.commit();
+    	}
+    }
+    
+    private void activate(Cut cut) throws IloException {
+    	cut.setRange(model.addLe(expression(cut), 0));
+    	cut.setAge(0);
+    }
+    
+    /**
+     * Maintains the cut pool after a solve of the master: cuts that have been slack for more than the maximum age are
+     * removed from the model and kept aside, and kept cuts that the new solution violates are added back.
+     * @return the number of cuts added back, if it is positive the master has to be solved again
+     */
+    public int updateCutPool() throws IloException {
+    	if (maxCutAge <= 0) {
+    		return 0;
+    	}
+    	Commitment U = getCommitment();
+    	double[] Phi = model.getValues(phi);
+    	int reactivated = 0;
+    	for (Cut cut : cuts.values()) {
+    		double lhs = cut.evaluate(U, Phi);
+    		if (cut.isActive()) {
+    			if (lhs >= -tolerance) {
+    				cut.setAge(0);
+    			} else {
+    				cut.setAge(cut.getAge()+1);
+    				if (cut.getAge() > maxCutAge) {
+    					model.remove(cut.getRange());
+    					cut.setRange(null);
+    					purgedCuts++;
+    				}
+    			}
+    		} else if (lhs > tolerance) {
+    			activate(cut);
+    			reactivated++;
+    		}
+    	}
+    	reactivatedCuts += reactivated;
+    	return reactivated;
+    }
+    
+    /**
+     * Sets after how many consecutive solves a slack cut is removed from the model, 0 keeps every cut
+     */
+    public void setMaxCutAge(int maxCutAge) {
+    	this.maxCutAge = maxCutAge;
+    }
+    
+    /**
+     * @return the number of distinct cuts of the classic BD, in the model or kept aside
+     */
+    public int getCuts() {
+    	return cuts.size();
+    }
+    
+    /**
+     * @return the number of cuts currently in the model
+     */
+    public int getActiveCuts() {
+    	int active = 0;
+    	for (Cut cut : cuts.values()) {
+    		if (cut.isActive()) {
+    			active++;
+    		}
+    	}
+    	return active;
+    }
+    
+    public int getDuplicateCuts() {
+    	return duplicateCuts;
+    }
+    
+    public int getPurgedCuts() {
+    	return purgedCuts;
+    }
+    
+    public int getReactivatedCuts() {
+    	return reactivatedCuts;
+    }
+    
+    private IloLinearNumExpr expression(Cut cut) throws IloException {
+    	IloLinearNumExpr lhs = model.linearNumExpr(cut.getConstant());
+    	int[] index = cut.getIndex();
+    	double[] value = cut.getValue();
+    	for (int k=1; k <= index.length; k++) {
+    		lhs.addTerm(value[k-1], uFlat[index[k-1]]);
+    	}
+    	if (cut.isOptimality()) {
+    		lhs.addTerm(-1, phi[cut.getPhi()]);
+    	}
+    	return lhs;
+    }
+    
+    /**
+     * @return u^j(b-Gx) from the flat dual arrays of the subproblem of scenario s, as a cut without a phi term.
+     * It is shared by the cuts of both Bender's Decompositions
+     */
+    public Cut scenarioCut(SubProblem sp, int s) throws IloException {
+    	GeneratorProblem scenario = gcp.getScenario(s);
+    	double[] demandDuals = sp.getDemandDuals();
+    	double[] minProDuals = sp.getMinProDuals();
+    	double[] maxProDuals = sp.getMaxProDuals();
+    	double[] RampUpDuals = sp.getRampUpDuals();
+    	double[] RampDownDuals = sp.getRampDownDuals();
+    	
     	// adding constants
     	double constant = 0;
     	for (int t=1; t<=gcp.getT(); t++) {
-    		constant += gcp.getDemand()[t-1]*demandDuals[t-1];
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			constant += gcp.getRamping()[g-1]*RampDownDuals[g-1][t-1];
-    			constant += gcp.getRamping()[g-1]*RampUpDuals[g-1][t-1];
-    		}
+    		constant += scenario.getDemand()[t-1]*demandDuals[t-1];
     	}
-    	lhs.setConstant(constant);
-    	// adding u-terms
-    	for(int t=1; t<=gcp.getT();t++) {
-    		for (int g=1; g<=gcp.getnGenerators();g++) {
-    			lhs.addTerm(minProDuals[g-1][t-1]*gcp.getMinP()[g-1], u[g-1][t-1]);
-    			lhs.addTerm(maxProDuals[g-1][t-1]*gcp.getMaxP()[g-1], u[g-1][t-1]);
+    	// adding u-terms, in the same (g-1)*T+(t-1) order as uFlat
+    	double[] coefs = new double[uFlat.length];
+    	for (int g=1; g<=gcp.getnGenerators(); g++) {
+    		for(int t=1; t<=gcp.getT(); t++) {
+    			int i = (g-1)*gcp.getT()+t-1;
+    			constant += gcp.getRamping()[g-1]*(RampDownDuals[i]+RampUpDuals[i]);
+    			coefs[i] = minProDuals[i]*gcp.getMinP()[g-1] + maxProDuals[i]*gcp.getMaxP()[g-1];
     		}
     	}
-    	//IloRange cut = 
-    			model.addLe(lhs, 0);
-        //System.out.println("Adding cut "+cut.toString());    	
+    	return new Cut(constant, coefs, -1);
+    }
+    
+    // The cut of the single phi, the expectation of the scenario cuts
+    private Cut expectedCut(Cut[] cuts) {
+    	return Cut.expectation(cuts, gcp.getProbability(), 0, uFlat.length);
+    }
+    
+    /**
+     * Selects the pure Java dispatch solver for the subproblems of the extended BD instead of CPLEX
+     */
+    public void setDispatchSolver(boolean dispatch) {
+    	this.dispatch = dispatch;
     }
     
     
@@ -232,8 +822,181 @@ public class MasterProblem {
     
     public void solveBB() throws IloException{
         model.setOut(null);
-        model.use(new Callback());
-        model.solve();
+        // One set of subproblems per CPLEX thread and scenario, a thread count of 0 means CPLEX picks one per core
+        int threads = model.getParam(IloCplex.Param.Threads);
+        if (threads <= 0) {
+        	threads = Runtime.getRuntime().availableProcessors();
+        }
+        pools = new SubproblemPool[gcp.getnScenarios()];
+        try {
+        	for (int s=1; s<=gcp.getnScenarios(); s++) {
+        		pools[s-1] = new SubproblemPool(gcp.getScenario(s), threads, dispatch);
+        	}
+        	cache = new SubproblemCache(gcp, cacheSize);
+        	callbacks = 0;
+        	lazyCuts = 0;
+        	solveStart = System.nanoTime();
+        	model.use(new Callback());
+        	if (heuristic) {
+        		PriorityList list = new PriorityList(gcp, formulation);
+        		Commitment U = list.commit();
+        		double[] Q = secondStage(U);
+        		if (Q != null) {
+        			heuristicObjValue = getFixedCost(U) + scalProd(gcp.getProbability(), Q);
+        			addMIPStart(U, Q);
+        		}
+        		model.use(new Heuristic(list));
+        	}
+        	BendersEvents.MasterSolve event = new BendersEvents.MasterSolve();
+        	event.begin();
+        	model.solve();
+        	record(event, true);
+        } finally {
+        	for (SubproblemPool pool : pools) {
+        		if (pool != null) {
+        			pool.end();
+        		}
+        	}
+        }
+    }
+    
+    /**
+     * Selects whether the extended BD checks feasibility combinatorially before it solves the feasibility subproblem
+     */
+    public void setFeasibilityCheck(boolean feasibilityCheck) {
+    	this.feasibilityCheck = feasibilityCheck;
+    }
+    
+    /**
+     * Selects whether the extended BD takes optimality cuts from the merit order when the ramps are slack
+     */
+    public void setMeritOrderCuts(boolean meritOrder) {
+    	this.meritOrder = meritOrder;
+    }
+    
+    /**
+     * Selects whether the extended BD starts from the priority list commitment and rounds node solutions into incumbents
+     */
+    public void setHeuristic(boolean heuristic) {
+    	this.heuristic = heuristic;
+    }
+    
+    /**
+     * @return the objective of the priority list start of the extended BD, infinite if it had none
+     */
+    public double getHeuristicObjValue() {
+    	return heuristicObjValue;
+    }
+    
+    /**
+     * @return the number of rounded node solutions the extended BD gave CPLEX as incumbents
+     */
+    public synchronized int getHeuristicSolutions() {
+    	return heuristicSolutions;
+    }
+    
+    /**
+     * Sets how many commitment patterns the extended BD remembers the subproblem results of, 0 disables the cache
+     */
+    public void setCacheSize(int cacheSize) {
+    	this.cacheSize = cacheSize;
+    }
+    
+    /**
+     * @return the number of subproblem results the extended BD took from the cache
+     */
+    public long getCacheHits() {
+    	return cache == null ? 0 : cache.getHits();
+    }
+    
+    /**
+     * @return the number of subproblem results the extended BD had to solve for
+     */
+    public long getCacheMisses() {
+    	return cache == null ? 0 : cache.getMisses();
+    }
+    
+    /**
+     * @return the number of subproblem sets the extended BD created
+     */
+    public int getPoolSize() {
+    	int created = 0;
+    	if (pools != null) {
+    		for (SubproblemPool pool : pools) {
+    			created += pool == null ? 0 : pool.getCreated();
+    		}
+    	}
+    	return created;
+    }
+    
+    /**
+     * @return the number of times the extended BD handed out a subproblem set again after it was released
+     */
+    public int getPoolReuses() {
+    	int reused = 0;
+    	if (pools != null) {
+    		for (SubproblemPool pool : pools) {
+    			reused += pool == null ? 0 : pool.getReused();
+    		}
+    	}
+    	return reused;
+    }
+    
+    
+    /**
+     * Solves the subproblems of scenario s at U with a set borrowed from its pool
+     * @return whether the scenario is feasible, its production cost and its cut
+     */
+    private SubproblemCache.Result evaluate(Commitment U, int s) throws IloException {
+    	SubproblemPool.Entry entry = pools[s-1].borrow();
+    	try {
+    		// The feasibility LP is only needed when the combinatorial check cannot decide
+    		FeasibilityCheck check = entry.getFeasibilityCheck();
+    		FeasibilityCheck.Result feasible = feasibilityCheck ? check.check(U) : FeasibilityCheck.Result.UNKNOWN;
+    		if (feasible == FeasibilityCheck.Result.INFEASIBLE) {
+    			return new SubproblemCache.Result(false, Double.POSITIVE_INFINITY, check.getCut());
+    		}
+    		if (feasible == FeasibilityCheck.Result.UNKNOWN) {
+    			SubProblem fsp = entry.getFeasibilityProblem();
+    			fsp.update(U);
+    			fsp.solve();
+    			if (fsp.getObjValue() > 1e-7) {
+    				return new SubproblemCache.Result(false, Double.POSITIVE_INFINITY, scenarioCut(fsp, s));
+    			}
+    		}
+    		// Without coupling by the ramps the cut follows from the merit order
+    		MeritOrderCut merit = entry.getMeritOrderCut();
+    		if (meritOrder && merit.solve(U)) {
+    			return new SubproblemCache.Result(true, merit.getObjValue(), merit.getCut());
+    		}
+    		// solve Optimality Subproblem checking for optimality
+    		SubProblem osp = entry.getOptimalityProblem();
+    		osp.update(U);
+    		osp.solve();
+    		return new SubproblemCache.Result(true, osp.getObjValue(), scenarioCut(osp, s));
+    	} finally {
+    		pools[s-1].release(entry);
+    	}
+    }
+    
+    
+    /**
+     * @return the production cost of every scenario at U, or null if the second stage of a scenario is infeasible
+     */
+    private double[] secondStage(Commitment U) throws IloException {
+    	double[] Q = new double[gcp.getnScenarios()];
+    	for (int s=1; s<=Q.length; s++) {
+    		SubproblemCache.Result result = cache.get(U, s);
+    		if (result == null) {
+    			result = evaluate(U, s);
+    			cache.put(U, s, result);
+    		}
+    		if (!result.isFeasible()) {
+    			return null;
+    		}
+    		Q[s-1] = result.getObjValue();
+    	}
+    	return Q;
     }
     
     
@@ -244,70 +1007,138 @@ public class MasterProblem {
 
         protected void main() throws IloException {
         	// Get current solution at this node
-        	double[][] U = getU();
-        	double Phi = getPhi();
+        	Commitment U = getCommitment();
+        	double[] Phi = getPhi();
         	
-        	FeasibilityProblem fsp = new FeasibilityProblem(gcp, U);
-			fsp.solve();
+        	// The scenarios are checked one after the other, CPLEX already runs a callback on every thread.
+        	// Patterns seen at another node are answered from the cache
+        	Cut[] cuts = new Cut[gcp.getnScenarios()];
+        	double[] Q = new double[gcp.getnScenarios()];
+        	boolean feasible = true;
+        	for (int s=1; s<=cuts.length; s++) {
+        		SubproblemCache.Result result = cache.get(U, s);
+        		if (result == null) {
+        			result = evaluate(U, s);
+        			cache.put(U, s, result);
+        		}
+        		cuts[s-1] = result.getCut();
+        		Q[s-1] = result.getObjValue();
 			
-			//Checking Feasibility
-			if(fsp.getObjValue()>1e-7) {
+        		//Checking Feasibility
+        		if(!result.isFeasible()) {
 				
-				// We identified an infeasible solution so we will add the feasibility cut to the node
-				double constant = fsp.getConstantTerm();
-				IloLinearNumExpr lhs = fsp.getLinearTerm(u);
-		    	add(model.le(lhs, -constant));		    	
-			}
-			
-			else {	
-			// solve Optimality Subproblem checking for optimality 
-			OptimalityProblem osp = new OptimalityProblem(gcp, U);
-			osp.solve();
+        			// We identified an infeasible solution so we will add the feasibility cut to the node
+        			// Lazy constraints are kept in CPLEX's own pool, so they do not go through the cut pool
+        			addLazy(cuts[s-1]);
+        			feasible = false;
+        		}
+        	}
+        	if (!feasible) {
+        		report();
+        		return;
+        	}
 			
-			if( Phi+1e-7 >= osp.getObjValue()) {
-				// The node is optimal! Hurrah!
-				
-				//Saving the optimal solution for printing
-				L = new double[gcp.getT()];
-				L = osp.getSolutionL();
-				P = new double[gcp.getnGenerators()][gcp.getT()];
-				P = osp.getSolutionP();
-			}
-			else {
-				// Solution is not optimal and we must introduce a cut with the duals from the Optimality subproblem
-				
-				IloLinearNumExpr lhs = osp.getLinearTerm(u);
-				lhs.addTerm(-1, phi);
-				double constant = osp.getConstantTerm();
-		    	
-		    	add(model.le(lhs,-constant));				
-				
-			}// if optimal			
-			}// if feasible
-        	
-        	
-        	
+        	if (multiCut) {
+        		for (int s=1; s<=cuts.length; s++) {
+        			if (Phi[s-1]+tolerance < Q[s-1]) {
+        				addLazy(cuts[s-1].withPhi(s-1));
+        			}
+        		}
+        	}
+        	else if (Phi[0]+tolerance < scalProd(gcp.getProbability(), Q)) {
+        		// Solution is not optimal and we must introduce a cut with the duals from the Optimality subproblems
+        		addLazy(expectedCut(cuts));
+        	}
+        	// otherwise the node is optimal! Hurrah!
+        	report();
         }// Main Callback
         
-        // Methods for getting the Phi and U solution at this specific node.
-        public double getPhi() throws IloException {
-        	return getValue(phi);
+        private void addLazy(Cut cut) throws IloException {
+        	BendersEvents.CutAdd event = new BendersEvents.CutAdd();
+        	event.begin();
+        	add(model.le(expression(cut), 0));
+        	record(event, cut, true, false);
+        	synchronized (MasterProblem.this) {
+        		lazyCuts++;
+        	}
         }
-        public double[][] getU() throws IloException{
-        	double[][] U = new double[gcp.getnGenerators()][gcp.getT()];
-        	for(int t=1; t<=gcp.getT();t++) {
-        		for (int g=1; g<=gcp.getnGenerators();g++) {
-        			U[g-1][t-1] = getValue(u[g-1][t-1]);
+        
+        // Every call is an iteration of the extended BD, the lazy constraints are not rows of the model
+        private void report() throws IloException {
+        	double lowerBound = getBestObjValue();
+        	double upperBound = hasIncumbent() ? getIncumbentObjValue() : Double.POSITIVE_INFINITY;
+        	int rows = getNrows();
+        	long nodes = getNnodes64();
+        	synchronized (MasterProblem.this) {
+        		callbacks++;
+        		BendersListener.Iteration iteration = new BendersListener.Iteration(callbacks, lowerBound, upperBound,
+        				MasterProblem.this.cuts.size() + lazyCuts, rows, nodes, (System.nanoTime() - solveStart)/1e9);
+        		BendersEvents.iteration(iteration);
+        		if (listener != null) {
+        			listener.iteration(iteration);
         		}
         	}
-        	return U;
         }
         
+        // Methods for getting the Phi and U solution at this specific node.
+        public double[] getPhi() throws IloException {
+        	return getValues(phi);
+        }
+        public Commitment getCommitment() throws IloException{
+        	return Commitment.of(getValues(uFlat), gcp.getnGenerators(), gcp.getT());
+        }
+        
+    
+    }
+    
+    private class Incumbents extends IloCplex.IncumbentCallback {
+    	private final IncumbentListener listener;
+    	
+    	public Incumbents(IncumbentListener listener) {
+    		this.listener = listener;
+    	}
+    	
+    	protected void main() throws IloException {
+    		listener.incumbent(Commitment.of(getValues(uFlat), gcp.getnGenerators(), gcp.getT()), getValues(phi));
+    	}
+    }
     
+    private class Heuristic extends IloCplex.HeuristicCallback {
+    	private final PriorityList list;
+    	
+    	public Heuristic(PriorityList list) {
+    		this.list = list;
+    	}
+    	
+    	protected void main() throws IloException {
+    		// Round the node solution, repair its up and down times and price it in the second stage
+    		Commitment U = list.round(getValues(uFlat));
+    		if (U == null) {
+    			return;
+    		}
+    		double[] Q = secondStage(U);
+    		if (Q == null) {
+    			return;
+    		}
+    		double objValue = getFixedCost(U) + scalProd(gcp.getProbability(), Q);
+    		if (hasIncumbent() && objValue >= getIncumbentObjValue() - tolerance) {
+    			return;
+    		}
+    		setSolution(startVariables(), startValues(U, Q), objValue);
+    		synchronized (MasterProblem.this) {
+    			heuristicSolutions++;
+    		}
+    	}
     }
     
     // Method for printing the extended Bender's Decomposition, as we need to extract the second stage solution
     public void printBB() throws IloException {
+    	// The callback may have taken the final commitment from the cache, so its dispatch is solved for here
+    	OptimalityProblem osp = new OptimalityProblem(gcp.getScenario(1), getU());
+    	osp.solve();
+    	L = osp.getSolutionL();
+    	P = osp.getSolutionP();
+    	osp.end();
     	System.out.println("// ========= Printing solution ===========");
         
         System.out.println("\n=====Shedding===== ");
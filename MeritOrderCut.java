@@ -0,0 +1,138 @@
+import java.util.Arrays;
+
+public class MeritOrderCut {
+	/**
+	 * The optimality subproblem in closed form for commitments whose dispatch is not coupled by the ramp constraints.
+	 * Without ramping every hour is a separate problem: all committed generators run at their minimum production and the
+	 * rest of the demand is loaded in merit order, by production cost, as long as it is cheaper than shedding.
+	 * The demand dual is the cost of the marginal generator, or the shedding cost, and the duals of the minimum and
+	 * maximum production are the reduced costs c - pi split by their sign.
+	 *
+	 * If this dispatch satisfies every ramp constraint it is optimal for the full problem and the ramp duals are zero,
+	 * so the cut follows without an LP. Otherwise the hours are coupled and solve() returns false, then the subproblem
+	 * has to be solved. Apart from the cut itself, nothing is allocated per solve.
+	 */
+
+	private final GeneratorProblem gcp;
+	private final int[] merit;		// generators by increasing production cost
+	private final double[] p;		// in G*T, production of the last solve
+	private final double[] price;	// in T, demand dual of the last solve
+	private final double[] coefs;	// in G*T, u-terms of the cut
+	private double objValue;
+
+	public MeritOrderCut(GeneratorProblem gcp) {
+		this.gcp = gcp;
+		Integer[] order = new Integer[gcp.getnGenerators()];
+		for (int g=1; g <= order.length; g++) {
+			order[g-1] = g;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(gcp.getProdCost()[a-1], gcp.getProdCost()[b-1]));
+		this.merit = new int[order.length];
+		for (int k=1; k <= order.length; k++) {
+			merit[k-1] = order[k-1];
+		}
+		this.p = new double[gcp.getnGenerators()*gcp.getT()];
+		this.price = new double[gcp.getT()];
+		this.coefs = new double[gcp.getnGenerators()*gcp.getT()];
+	}
+
+	/**
+	 * Dispatches U hour by hour in merit order
+	 * @return false if the dispatch violates a ramp constraint or the minimum production exceeds the demand,
+	 * then the subproblem has to be solved instead
+	 */
+	public boolean solve(Commitment U) {
+		int T = gcp.getT();
+		double shed = gcp.getShedCost();
+		objValue = 0;
+		for (int t=1; t <= T; t++) {
+			double remaining = gcp.getDemand()[t-1];
+			for (int g=1; g <= gcp.getnGenerators(); g++) {
+				p[(g-1)*T+t-1] = gcp.getMinP()[g-1]*U.get(g, t);
+				remaining -= p[(g-1)*T+t-1];
+			}
+			if (remaining < 0) {
+				return false;
+			}
+			// Loading in merit order, the price is the cost of the generator that is loaded partially
+			double marginal = shed;
+			boolean partial = false;
+			for (int k=1; k <= merit.length && remaining > 0; k++) {
+				int g = merit[k-1];
+				double cost = gcp.getProdCost()[g-1];
+				if (!U.isOn(g, t) || cost >= shed) {
+					continue;
+				}
+				double room = gcp.getMaxP()[g-1] - gcp.getMinP()[g-1];
+				double load = Math.min(room, remaining);
+				p[(g-1)*T+t-1] += load;
+				remaining -= load;
+				if (load < room) {
+					marginal = cost;
+					partial = true;
+				}
+			}
+			if (remaining <= 0 && !partial) {
+				// Demand is met exactly, the price may rise up to the cheapest generator that could still produce more
+				marginal = nextPrice(U, t);
+			}
+			price[t-1] = marginal;
+			objValue += shed*Math.max(remaining, 0);
+			for (int g=1; g <= gcp.getnGenerators(); g++) {
+				objValue += gcp.getProdCost()[g-1]*p[(g-1)*T+t-1];
+			}
+		}
+		// The hourly dispatch has to respect the ramps, starting from p_0 = 0
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			double previous = 0;
+			for (int t=1; t <= T; t++) {
+				double step = p[(g-1)*T+t-1] - previous;
+				if (step > gcp.getRamping()[g-1] + 1e-9 || (t > 1 && -step > gcp.getRamping()[g-1] + 1e-9)) {
+					return false;
+				}
+				previous = p[(g-1)*T+t-1];
+			}
+		}
+		return true;
+	}
+
+	// The cheapest committed generator below its maximum production, capped by the shedding cost
+	private double nextPrice(Commitment U, int t) {
+		for (int k=1; k <= merit.length; k++) {
+			int g = merit[k-1];
+			if (U.isOn(g, t) && p[(g-1)*gcp.getT()+t-1] < gcp.getMaxP()[g-1] - 1e-9) {
+				return Math.min(gcp.getShedCost(), gcp.getProdCost()[g-1]);
+			}
+		}
+		return gcp.getShedCost();
+	}
+
+	public double getObjValue() {
+		return objValue;
+	}
+
+	/**
+	 * @return the optimality cut of the last successful solve, without a phi term
+	 */
+	public Cut getCut() {
+		int T = gcp.getT();
+		double constant = 0;
+		for (int t=1; t <= T; t++) {
+			constant += gcp.getDemand()[t-1]*price[t-1];
+			for (int g=1; g <= gcp.getnGenerators(); g++) {
+				// the duals of minimum and maximum production split the reduced cost c - pi by its sign
+				double reduced = gcp.getProdCost()[g-1] - price[t-1];
+				coefs[(g-1)*T+t-1] = gcp.getMinP()[g-1]*Math.max(reduced, 0) + gcp.getMaxP()[g-1]*Math.min(reduced, 0);
+			}
+		}
+		return new Cut(constant, coefs, -1);
+	}
+
+	/**
+	 * @return the production of the last solve in (g-1)*T+(t-1) order
+	 */
+	public double[] getProduction() {
+		return p;
+	}
+
+}
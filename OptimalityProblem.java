@@ -1,115 +1,215 @@
+import java.util.Arrays;
+
 import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
 import ilog.concert.IloLinearNumExpr;
 import ilog.concert.IloNumVar;
+import ilog.concert.IloObjective;
 import ilog.concert.IloRange;
 import ilog.cplex.IloCplex;
 
-public class OptimalityProblem {
+public class OptimalityProblem implements SubProblem {
 
 	
 	private GeneratorProblem gcp;
 	private IloNumVar[][] p;
 	private IloNumVar[] l;
 	private IloCplex model;
-	private IloRange[] demandConstraints;
-	private IloRange[][] minProConstr;
-	private IloRange[][] maxProConstr;
-	private IloRange[][] RampUpConstr;
-	private IloRange[][] RampDownConstr;
+	private IloLPMatrix lp;		 // every row of the subproblem
+	private IloRange[] minProFlat; // rows of the matrix in (g-1)*T+(t-1) order
+	private IloRange[] maxProFlat;
+	private boolean dualsCached; // duals below belong to the last solve
+	private double[] demandDuals;
+	private double[] minProDuals;
+	private double[] maxProDuals;
+	private double[] rampUpDuals;
+	private double[] rampDownDuals;
+	private double[][] currentU; // first stage solution the bounds are currently set for
+	private IloObjective objective;
+	private IloNumVar x0;		 // scales b(U) in the Magnanti-Wong problem, fixed at zero otherwise
+	private int x0Column;
+	private double[][] paretoU;	 // first stage solution the coefficients of x0 are currently set for
 
 	public OptimalityProblem(GeneratorProblem generatorproblem, double[][] U) throws IloException {
+		this(generatorproblem);
+		update(U);
+	}
+	
+	/**
+	 * Builds the subproblem once for the given problem with every generator switched off.
+	 * The first stage solution is passed in afterwards with update(U), so the same model can be re-solved every iteration.
+	 * All rows go to CPLEX as one LP matrix: the demand rows, then minimum and maximum production and ramping up and
+	 * down, every group in (g-1)*T+(t-1) order. Columns are p in the same order, l and x0
+	 */
+	public OptimalityProblem(GeneratorProblem generatorproblem) throws IloException {
 		// Initialising variables
 		this.gcp = generatorproblem;
-		this.p = new IloNumVar[gcp.getnGenerators()][gcp.getT()];
-		this.l = new IloNumVar[gcp.getT()];
+		int G = gcp.getnGenerators();
+		int T = gcp.getT();
 		this.model = new IloCplex();
-		
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				p[g-1][t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
-			}
-			l[t-1] = model.numVar(0, Double.POSITIVE_INFINITY);
+		IloNumVar[] pFlat = model.numVarArray(G*T, 0, Double.POSITIVE_INFINITY);
+		this.p = new IloNumVar[G][T];
+		for (int g = 1; g <= G; g++) {
+			System.arraycopy(pFlat, (g-1)*T, p[g-1], 0, T);
 		}
+		this.l = model.numVarArray(T, 0, Double.POSITIVE_INFINITY);
+		x0 = model.numVar(0, 0);
+		this.x0Column = G*T + T;
+		IloNumVar[] columns = new IloNumVar[G*T + T + 1];
+		System.arraycopy(pFlat, 0, columns, 0, G*T);
+		System.arraycopy(l, 0, columns, G*T, T);
+		columns[x0Column] = x0;
 		
-		// Creating Objective Function
-		IloLinearNumExpr obj = model.linearNumExpr();
-		
-		//production costs
-		for (int t=1; t <= gcp.getT(); t++) {
-			obj.addTerm(gcp.getShedCost(), l[t-1]);
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				obj.addTerm(gcp.getProdCost()[g-1], p[g-1][t-1]);
-			}
+		// Creating Objective Function, production costs
+		double[] costs = new double[columns.length];
+		for (int g = 1; g <= G; g++) {
+			Arrays.fill(costs, (g-1)*T, g*T, gcp.getProdCost()[g-1]);
 		}
+		Arrays.fill(costs, G*T, G*T + T, gcp.getShedCost());
+		IloLinearNumExpr obj = model.linearNumExpr();
+		obj.addTerms(costs, columns);
 		// minimize the objective function
-		model.addMinimize(obj);
+		objective = model.addMinimize(obj);
 		
+		RowMatrix rows = new RowMatrix(T + 4*G*T);
 		//Constraint 1e
-		this.demandConstraints = new IloRange[gcp.getT()];
-		for (int t = 1; t <= gcp.getT(); t++) {
-			IloLinearNumExpr lhs = model.linearNumExpr();
-			//sum
-			for (int g=1; g<=gcp.getnGenerators(); g++) {
-				lhs.addTerm(1, p[g-1][t-1]);}
-			lhs.addTerm(1, l[t-1]);
-			demandConstraints[t-1] = model.addEq(lhs, gcp.getDemand()[t-1]);
+		for (int t = 1; t <= T; t++) {
+			for (int g=1; g<=G; g++) {
+				rows.term((g-1)*T+t-1, 1);
+			}
+			rows.term(G*T+t-1, 1);
+			rows.term(x0Column, gcp.getDemand()[t-1]);
+			rows.eq(gcp.getDemand()[t-1]);
 		}
-		//Constraint 1f
-		this.minProConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				lhs.addTerm(1, p[g-1][t-1]);
-				minProConstr[g-1][t-1]=model.addGe(lhs, gcp.getMinP()[g-1]* U[g-1][t-1]);
+		//Constraint 1f, the bounds are set by update
+		for (int g = 1; g <= G; g++) {
+			for (int t=1; t <= T; t++) {
+				rows.term((g-1)*T+t-1, 1);
+				rows.ge(0);
 			}
 		}
-		
 		//Constraint 1g
-		this.maxProConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				lhs.addTerm(1, p[g-1][t-1]);
-				maxProConstr[g-1][t-1]=model.addLe(lhs, gcp.getMaxP()[g-1]*U[g-1][t-1]);
+		for (int g = 1; g <= G; g++) {
+			for (int t=1; t <= T; t++) {
+				rows.term((g-1)*T+t-1, 1);
+				rows.le(0);
 			}
 		}
-		
 		//Constraint 1h Note ramping up and down times are the same
-		this.RampUpConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				if (t <= 1) {
-					lhs.addTerm(1, p[g-1][t-1]);
-				}else {
-					lhs.addTerm(1, p[g-1][t-1]);
-					lhs.addTerm(-1, p[g-1][t-2]);
+		for (int g = 1; g <= G; g++) {
+			for (int t=1; t <= T; t++) {
+				rows.term((g-1)*T+t-1, 1);
+				if (t > 1) {
+					rows.term((g-1)*T+t-2, -1);
 				}
-				RampUpConstr[g-1][t-1] = model.addLe(lhs, gcp.getRamping()[g-1]);
+				rows.term(x0Column, gcp.getRamping()[g-1]);
+				rows.le(gcp.getRamping()[g-1]);
 			}
 		}
-		
 		//Constraint 1i Note ramping up and down times are the same
-		this.RampDownConstr = new IloRange[gcp.getnGenerators()][gcp.getT()];
-		for (int t=1; t <= gcp.getT(); t++) {
-			for (int g = 1; g <= gcp.getnGenerators(); g++) {
-				IloLinearNumExpr lhs = model.linearNumExpr();
-				if (t <= 1) {
-					lhs.addTerm(-1, p[g-1][t-1]);
-				}else {
-					lhs.addTerm(-1, p[g-1][t-1]);
-					lhs.addTerm(1, p[g-1][t-2]);
+		for (int g = 1; g <= G; g++) {
+			for (int t=1; t <= T; t++) {
+				rows.term((g-1)*T+t-1, -1);
+				if (t > 1) {
+					rows.term((g-1)*T+t-2, 1);
 				}
-				RampDownConstr[g-1][t-1] = model.addLe(lhs, gcp.getRamping()[g-1]);
+				rows.term(x0Column, gcp.getRamping()[g-1]);
+				rows.le(gcp.getRamping()[g-1]);
 			}
 		}
+		this.lp = rows.addTo(model, columns);
 		
+		// Only the right hand side changes between solves, so the previous basis stays dual feasible and dual simplex restarts from it
+		model.setOut(null);
+		model.setParam(IloCplex.Param.RootAlgorithm, IloCplex.Algorithm.Dual);
+		this.currentU = new double[G][T];
+		this.paretoU = new double[G][T];
+		
+		// Views of the constraint groups of the matrix
+		IloRange[] ranges = lp.getRanges();
+		this.minProFlat = Arrays.copyOfRange(ranges, T, T + G*T);
+		this.maxProFlat = Arrays.copyOfRange(ranges, T + G*T, T + 2*G*T);
 	}// Constructor
 	
+	/**
+	 * Rewrites the right hand side of the min and max production constraints for a new first stage solution.
+	 * Only the bounds that changed since the last call are passed on to CPLEX, the rest of the model and the basis are kept
+	 */
+	public void update(double[][] U) throws IloException {
+		for (int t=1; t <= gcp.getT(); t++) {
+			for (int g = 1; g <= gcp.getnGenerators(); g++) {
+				set(g, t, U[g-1][t-1]);
+			}
+		}
+	}
+	
+	/**
+	 * Rewrites the right hand side for a binary first stage solution, without building the matrix of U
+	 */
+	public void update(Commitment U) throws IloException {
+		for (int t=1; t <= gcp.getT(); t++) {
+			for (int g = 1; g <= gcp.getnGenerators(); g++) {
+				set(g, t, U.get(g, t));
+			}
+		}
+	}
+	
+	private void set(int g, int t, double value) throws IloException {
+		if (currentU[g-1][t-1] != value) {
+			minProFlat[(g-1)*gcp.getT()+t-1].setLB(gcp.getMinP()[g-1]*value);
+			maxProFlat[(g-1)*gcp.getT()+t-1].setUB(gcp.getMaxP()[g-1]*value);
+			currentU[g-1][t-1] = value;
+			dualsCached = false;
+		}
+	}
+	
+	
+	/**
+	 * Solves the Magnanti-Wong problem for a Pareto-optimal cut at U (Papadakos' primal form).
+	 * Among the optimal duals at U, i.e. the ones with pi*b(U) = objValue, it picks the one maximising pi*b(core),
+	 * where the core point lies in the relative interior of the master's convex hull:
+	 *   min c*x + objValue*x0  s.t.  A*x + b(U)*x0 (rel) b(core),  x0 free
+	 * The duals of this solve give the cut. The model is left with the right hand side of the core point,
+	 * so the next update(U) rewrites it.
+	 * @return false if the problem could not be solved to optimality, then no duals are available
+	 */
+	public boolean solvePareto(Commitment U, double[][] core, double objValue) throws IloException{
+		// Only the minimum and maximum production rows depend on U, their coefficients of x0 are set in the matrix
+		int T = gcp.getT();
+		int GT = gcp.getnGenerators()*T;
+		for (int t=1; t <= T; t++) {
+			for (int g = 1; g <= gcp.getnGenerators(); g++) {
+				if (paretoU[g-1][t-1] != U.get(g, t)) {
+					lp.setNZ(T + (g-1)*T+t-1, x0Column, gcp.getMinP()[g-1]*U.get(g, t));
+					lp.setNZ(T + GT + (g-1)*T+t-1, x0Column, gcp.getMaxP()[g-1]*U.get(g, t));
+					paretoU[g-1][t-1] = U.get(g, t);
+				}
+			}
+		}
+		model.setLinearCoef(objective, objValue, x0);
+		update(core);
+		x0.setLB(Double.NEGATIVE_INFINITY);
+		x0.setUB(Double.POSITIVE_INFINITY);
+		try {
+			solve();
+			return model.getStatus() == IloCplex.Status.Optimal;
+		} finally {
+			x0.setLB(0);
+			x0.setUB(0);
+		}
+	}
 	
 	public void solve() throws IloException{
 		model.setOut(null);
+        dualsCached = false;
+        BendersEvents.OptimalityLP event = new BendersEvents.OptimalityLP();
+        event.begin();
         model.solve();
+        event.end();
+        if (event.shouldCommit()) {
+        	event.objValue = model.getStatus() == IloCplex.Status.Optimal ? model.getObjValue() : Double.NaN;
+        	event.commit();
+        }
     }
 	
 	/**
@@ -120,74 +220,105 @@ public class OptimalityProblem {
     }
 	
     // get duals Duals
+    // All duals are fetched with one getDuals call for the matrix the first time they are needed after a solve,
+    // and kept in flat arrays indexed by (g-1)*T+(t-1)
+    private void cacheDuals() throws IloException{
+    	if (!dualsCached) {
+    		int T = gcp.getT();
+    		int GT = gcp.getnGenerators()*T;
+    		BendersEvents.DualExtraction event = new BendersEvents.DualExtraction();
+    		event.begin();
+    		double[] duals = model.getDuals(lp);
+    		demandDuals = Arrays.copyOfRange(duals, 0, T);
+    		minProDuals = Arrays.copyOfRange(duals, T, T + GT);
+    		maxProDuals = Arrays.copyOfRange(duals, T + GT, T + 2*GT);
+    		rampUpDuals = Arrays.copyOfRange(duals, T + 2*GT, T + 3*GT);
+    		rampDownDuals = Arrays.copyOfRange(duals, T + 3*GT, T + 4*GT);
+    		dualsCached = true;
+    		event.end();
+    		if (event.shouldCommit()) {
+    			event.feasibility = false;
+    			event.duals = duals.length;
+    			event.commit();
+    		}
+    	}
+    }
+    
+    public double[] getDemandDuals() throws IloException{
+    	cacheDuals();
+    	return demandDuals;
+    }
+    
+    public double[] getMinProDuals() throws IloException{
+    	cacheDuals();
+    	return minProDuals;
+    }
+    
+    public double[] getMaxProDuals() throws IloException{
+    	cacheDuals();
+    	return maxProDuals;
+    }
+    
+    public double[] getRampUpDuals() throws IloException{
+    	cacheDuals();
+    	return rampUpDuals;
+    }
+    
+    public double[] getRampDownDuals() throws IloException{
+    	cacheDuals();
+    	return rampDownDuals;
+    }
+    
     public double[] getDualsDemandConstraints() throws IloException{
-        double duals[] = new double[gcp.getT()];
-        for(int t = 1; t <= gcp.getT(); t++){
-            duals[t-1] = model.getDual(demandConstraints[t-1]);
-        }
-        return duals;
+        return getDemandDuals().clone();
     }
     
     public double[][] getminProConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(minProConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getMinProDuals());
     }
     
     public double[][] getmaxProConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(maxProConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getMaxProDuals());
     }
     
     public double[][] getRampUpConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(RampUpConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getRampUpDuals());
     }
     
     public double[][] getRampDownConstraints() throws IloException{
-    	double duals[][] = new double[gcp.getnGenerators()][gcp.getT()];
-    	for (int t=1; t<=gcp.getT(); t++) {
-    		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			duals[g-1][t-1] = model.getDual(RampDownConstr[g-1][t-1]);
-    		}
-    	}    	
-    	return duals;
+    	return toMatrix(getRampDownDuals());
+    }
+    
+    private double[][] toMatrix(double[] flat) {
+    	double matrix[][] = new double[gcp.getnGenerators()][gcp.getT()];
+    	for (int g=1; g<=gcp.getnGenerators(); g++) {
+    		System.arraycopy(flat, (g-1)*gcp.getT(), matrix[g-1], 0, gcp.getT());
+    	}
+    	return matrix;
     }
     
     
     // Returning Constant and linear terms for the Extended BD optimality cuts
     public double getConstantTerm() throws IloException{
+    	cacheDuals();
     	double constant = 0;
     	for (int t=1; t<=gcp.getT(); t++) {
-    		constant += gcp.getDemand()[t-1]*model.getDual(demandConstraints[t-1]);
+    		constant += gcp.getDemand()[t-1]*demandDuals[t-1];
     		for (int g=1; g<=gcp.getnGenerators(); g++) {
-    			constant += gcp.getRamping()[g-1]*model.getDual(RampUpConstr[g-1][t-1]);
-    			constant += gcp.getRamping()[g-1]*model.getDual(RampDownConstr[g-1][t-1]);
+    			constant += gcp.getRamping()[g-1]*rampUpDuals[(g-1)*gcp.getT()+t-1];
+    			constant += gcp.getRamping()[g-1]*rampDownDuals[(g-1)*gcp.getT()+t-1];
     		}
     	}
     	return constant;
     }
     
     public IloLinearNumExpr getLinearTerm(IloNumVar u[][]) throws IloException{
+    	cacheDuals();
     	IloLinearNumExpr lhs = model.linearNumExpr();
     	for(int t=1; t<=gcp.getT();t++) {
     		for (int g=1; g<=gcp.getnGenerators();g++) {
-    			lhs.addTerm(model.getDual(minProConstr[g-1][t-1])*gcp.getMinP()[g-1], u[g-1][t-1]);
-    			lhs.addTerm(model.getDual(maxProConstr[g-1][t-1])*gcp.getMaxP()[g-1], u[g-1][t-1]);
+    			lhs.addTerm(minProDuals[(g-1)*gcp.getT()+t-1]*gcp.getMinP()[g-1], u[g-1][t-1]);
+    			lhs.addTerm(maxProDuals[(g-1)*gcp.getT()+t-1]*gcp.getMaxP()[g-1], u[g-1][t-1]);
     		}
     	}
     	return lhs;
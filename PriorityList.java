@@ -0,0 +1,256 @@
+import java.util.Arrays;
+
+public class PriorityList {
+	/**
+	 * A greedy commitment heuristic giving the master a first incumbent before any cut is known.
+	 * Generators are ranked by their average cost at full output: the production cost plus the online cost and the
+	 * startup cost, spread over the horizon, per unit of maximum production. In this order every generator is switched
+	 * on in the hours in which the capacity committed so far does not cover the highest demand over the scenarios.
+	 *
+	 * The up and down time rows 1c and 1d of the master only involve one generator each, so every generator is repaired
+	 * on its own by switching it on in more hours until its rows hold, and it is kept only if the least production of
+	 * the commitment still fits under the demand of every scenario. The commitment is therefore always feasible for the
+	 * master and for the second stage. In the compact formulation of the master the textbook up and down times are
+	 * repaired instead, by extending every run to minT hours and filling every pause shorter than maxT hours.
+	 */
+
+	private final GeneratorProblem gcp;
+	private final int[] order;				// generators by increasing average cost at full output
+	private final double[] peak;			// in T, highest demand over the scenarios
+	private final FeasibilityCheck[] check;	// in S
+	private final MasterProblem.Formulation formulation; // whose up and down times the commitments satisfy
+
+	public PriorityList(GeneratorProblem gcp) {
+		this(gcp, MasterProblem.Formulation.CLASSIC);
+	}
+
+	public PriorityList(GeneratorProblem gcp, MasterProblem.Formulation formulation) {
+		this.gcp = gcp;
+		this.formulation = formulation;
+		int T = gcp.getT();
+		Integer[] ranked = new Integer[gcp.getnGenerators()];
+		for (int g=1; g <= ranked.length; g++) {
+			ranked[g-1] = g;
+		}
+		Arrays.sort(ranked, (a, b) -> Double.compare(averageCost(a), averageCost(b)));
+		this.order = new int[ranked.length];
+		for (int k=1; k <= ranked.length; k++) {
+			order[k-1] = ranked[k-1];
+		}
+		this.peak = new double[T];
+		this.check = new FeasibilityCheck[gcp.getnScenarios()];
+		for (int s=1; s <= check.length; s++) {
+			check[s-1] = new FeasibilityCheck(gcp.getScenario(s));
+			for (int t=1; t <= T; t++) {
+				peak[t-1] = Math.max(peak[t-1], gcp.getScenario(s).getDemand()[t-1]);
+			}
+		}
+	}
+
+	private double averageCost(int g) {
+		double maxP = gcp.getMaxP()[g-1];
+		if (maxP <= 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		return gcp.getProdCost()[g-1] + (gcp.getOnCost()[g-1] + gcp.getStartGenCost()[g-1]/gcp.getT())/maxP;
+	}
+
+	/**
+	 * @return the priority list commitment, all generators off if none of them can be committed
+	 */
+	public Commitment commit() {
+		int T = gcp.getT();
+		double[][] U = new double[gcp.getnGenerators()][T];
+		double[] capacity = new double[T];
+		for (int k=1; k <= order.length; k++) {
+			int g = order[k-1];
+			// Shedding is cheaper than producing with this generator
+			if (gcp.getProdCost()[g-1] >= gcp.getShedCost()) {
+				continue;
+			}
+			double[] row = new double[T];
+			boolean needed = false;
+			for (int t=1; t <= T; t++) {
+				if (capacity[t-1] < peak[t-1]) {
+					row[t-1] = 1;
+					needed = true;
+				}
+			}
+			if (!needed) {
+				break;
+			}
+			if (!repair(g, row)) {
+				continue;
+			}
+			U[g-1] = row;
+			if (!fits(Commitment.of(U))) {
+				U[g-1] = new double[T];
+				continue;
+			}
+			for (int t=1; t <= T; t++) {
+				capacity[t-1] += gcp.getMaxP()[g-1]*row[t-1];
+			}
+		}
+		return Commitment.of(U);
+	}
+
+	/**
+	 * Rounds a fractional u, e.g. the LP solution at a node, and repairs the up and down times of every generator.
+	 * Only touches local arrays, so it can be called from several callback threads
+	 * @param values u in (g-1)*T+(t-1) order
+	 * @return the rounded commitment, or null if a generator cannot be repaired. Its second stage may still be infeasible
+	 */
+	public Commitment round(double[] values) {
+		int T = gcp.getT();
+		double[][] U = new double[gcp.getnGenerators()][T];
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			for (int t=1; t <= T; t++) {
+				U[g-1][t-1] = values[(g-1)*T+t-1] > 0.5 ? 1 : 0;
+			}
+			if (!repair(g, U[g-1])) {
+				return null;
+			}
+		}
+		return Commitment.of(U);
+	}
+
+	// Whether the least production of U fits under the demand of every scenario, within the ramps
+	private boolean fits(Commitment U) {
+		for (int s=1; s <= check.length; s++) {
+			if (check[s-1].check(U) != FeasibilityCheck.Result.FEASIBLE) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Switches generator g on in more hours until rows 1c and 1d of the master hold.
+	 * With g off in hour t, 1c only fails if it is switched on in TU(t), which switching it on in t repairs.
+	 * With g on in hour t, 1d only fails if it is off in TD(t), which switching it on there repairs
+	 * @return whether the rows hold, as every pass switches on at least one more hour this ends within T passes
+	 */
+	private boolean repair(int g, double[] row) {
+		if (formulation == MasterProblem.Formulation.COMPACT) {
+			repairRuns(g, row);
+			return isValid(g, row);
+		}
+		int T = gcp.getT();
+		for (int pass=0; pass <= T; pass++) {
+			boolean changed = false;
+			for (int t=1; t <= T; t++) {
+				if (upRow(g, t, row) < 0) {
+					row[t-1] = 1;
+					changed = true;
+				}
+				if (downRow(g, t, row) < -(TD(t, g)-t+1)) {
+					row[TD(t, g)-1] = 1;
+					changed = true;
+				}
+			}
+			if (!changed) {
+				return isValid(g, row);
+			}
+		}
+		return isValid(g, row);
+	}
+
+	/**
+	 * Extends every run of generator g to minT hours and fills every pause shorter than maxT hours, in one pass forward.
+	 * Both only switch the generator on, so a repaired run is never shortened again
+	 */
+	private void repairRuns(int g, double[] row) {
+		int T = gcp.getT();
+		for (int t=1; t <= T; t++) {
+			boolean before = t > 1 && row[t-2] > 0.5;
+			if (row[t-1] > 0.5 && !before) {
+				for (int j = t; j <= TU(t, g); j++) {
+					row[j-1] = 1;
+				}
+			} else if (row[t-1] < 0.5 && before) {
+				int next = 0;
+				for (int j = t; j <= TD(t, g) && next == 0; j++) {
+					if (row[j-1] > 0.5) {
+						next = j;
+					}
+				}
+				for (int j = t; j < next; j++) {
+					row[j-1] = 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if U satisfies the up and down times of the master, rows 1c and 1d or the compact formulation
+	 */
+	public boolean isValid(Commitment U) {
+		double[][] rows = U.toArray();
+		for (int g=1; g <= gcp.getnGenerators(); g++) {
+			if (!isValid(g, rows[g-1])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean isValid(int g, double[] row) {
+		if (formulation == MasterProblem.Formulation.COMPACT) {
+			return isValidRuns(g, row);
+		}
+		for (int t=1; t <= gcp.getT(); t++) {
+			if (upRow(g, t, row) < 0 || downRow(g, t, row) < -(TD(t, g)-t+1)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// A startup in t keeps g on until TU(t) and a shutdown in t keeps it off until TD(t), as the turn on and turn off rows
+	private boolean isValidRuns(int g, double[] row) {
+		for (int t=1; t <= gcp.getT(); t++) {
+			boolean before = t > 1 && row[t-2] > 0.5;
+			boolean on = row[t-1] > 0.5;
+			for (int j = t; j <= (on ? TU(t, g) : TD(t, g)) && on != before; j++) {
+				if ((row[j-1] > 0.5) != on) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// Left hand side of constraint 1c in hour t, term by term as in the master
+	private double upRow(int g, int t, double[] row) {
+		double lhs = 0;
+		for (int j = t; j <= TU(t, g); j++) {
+			lhs += row[t-1] - row[j-1];
+			if (j > 1) {
+				lhs += row[j-2];
+			}
+		}
+		return lhs;
+	}
+
+	// Left hand side of constraint 1d in hour t, term by term as in the master
+	private double downRow(int g, int t, double[] row) {
+		double lhs = 0;
+		for (int j = t; j <= TD(t, g); j++) {
+			if (j <= 1) {
+				lhs += row[t-1] - row[j-1];
+			} else {
+				lhs += -row[t-1] + row[j-1] - row[j-2];
+			}
+		}
+		return lhs;
+	}
+
+	private int TU(int t, int gen) {
+		return Math.min(t+gcp.getMinT()[gen-1]-1, gcp.getT());
+	}
+
+	private int TD(int t, int gen) {
+		return Math.min(t+gcp.getMaxT()[gen-1]-1, gcp.getT());
+	}
+
+}
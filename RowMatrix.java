@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloNumVar;
+import ilog.cplex.IloCplex;
+
+public class RowMatrix {
+	/**
+	 * Collects the rows of a model in compressed sparse row form and hands them to CPLEX as one LP matrix, instead of
+	 * building an expression and a range per row with a call into CPLEX for every term.
+	 * Terms on the same column of a row are merged and terms that cancel are dropped, so rows written as sums, like
+	 * the up and down time constraints of the master, are passed with their actual nonzeros.
+	 * Columns and rows are numbered from 0, columns in the order of the variables given to addTo, as in the LP matrix.
+	 */
+
+	private double[] lb;
+	private double[] ub;
+	private int[][] index;
+	private double[][] value;
+	private int rows;
+	private int[] rowIndex = new int[8];		// terms of the row being built
+	private double[] rowValue = new double[8];
+	private int terms;
+
+	/**
+	 * @param capacity the expected number of rows, the arrays grow beyond it
+	 */
+	public RowMatrix(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.lb = new double[capacity];
+		this.ub = new double[capacity];
+		this.index = new int[capacity][];
+		this.value = new double[capacity][];
+	}
+
+	/**
+	 * Adds coef*column to the row being built
+	 */
+	public void term(int column, double coef) {
+		for (int k=1; k <= terms; k++) {
+			if (rowIndex[k-1] == column) {
+				rowValue[k-1] += coef;
+				return;
+			}
+		}
+		if (terms == rowIndex.length) {
+			rowIndex = Arrays.copyOf(rowIndex, 2*terms);
+			rowValue = Arrays.copyOf(rowValue, 2*terms);
+		}
+		rowIndex[terms] = column;
+		rowValue[terms] = coef;
+		terms++;
+	}
+
+	/**
+	 * Ends the row being built as lower <= row <= upper
+	 * @return the index of the row
+	 */
+	public int row(double lower, double upper) {
+		if (rows == lb.length) {
+			lb = Arrays.copyOf(lb, 2*rows);
+			ub = Arrays.copyOf(ub, 2*rows);
+			index = Arrays.copyOf(index, 2*rows);
+			value = Arrays.copyOf(value, 2*rows);
+		}
+		int nonzeros = 0;
+		for (int k=1; k <= terms; k++) {
+			if (rowValue[k-1] != 0) {
+				nonzeros++;
+			}
+		}
+		index[rows] = new int[nonzeros];
+		value[rows] = new double[nonzeros];
+		int n = 0;
+		for (int k=1; k <= terms; k++) {
+			if (rowValue[k-1] != 0) {
+				index[rows][n] = rowIndex[k-1];
+				value[rows][n] = rowValue[k-1];
+				n++;
+			}
+		}
+		lb[rows] = lower;
+		ub[rows] = upper;
+		terms = 0;
+		return rows++;
+	}
+
+	public int ge(double lower) {
+		return row(lower, Double.POSITIVE_INFINITY);
+	}
+
+	public int le(double upper) {
+		return row(Double.NEGATIVE_INFINITY, upper);
+	}
+
+	public int eq(double rhs) {
+		return row(rhs, rhs);
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Adds the columns and every row to the model in one LP matrix
+	 */
+	public IloLPMatrix addTo(IloCplex model, IloNumVar[] columns) throws IloException {
+		IloLPMatrix lp = model.addLPMatrix();
+		lp.addCols(columns);
+		lp.addRows(Arrays.copyOf(lb, rows), Arrays.copyOf(ub, rows), Arrays.copyOf(index, rows), Arrays.copyOf(value, rows));
+		return lp;
+	}
+
+}
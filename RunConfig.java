@@ -0,0 +1,323 @@
+public class RunConfig {
+	/**
+	 * The options of a non-interactive run, parsed from command line arguments of the form --name value.
+	 * Every option has a default, so only the ones that differ from the default example need to be given.
+	 */
+
+	public static final String USAGE = "Options: --algorithm direct|classic|extended, --formulation classic|compact, --generators <file>, --columns <names>, --loads <file>, --snapshot <file>, --save-snapshot <file>, \n"
+			+ "--G <generators>, --T <hours>, --seed <n>, --S <scenarios>, --shed <cost>, --gap <relative gap>, --tolerance <absolute tolerance>, \n"
+			+ "--time-limit <seconds>, --max-iterations <n>, --threads <n>, --output <file>, --progress <file>, --cut-age <n>, --cache <patterns>, --root-rounds <n>, \n--stabilize <weight>, --pipeline <batch>, --pool <k>, --scenarios <file>, --workers <n>, --dispatch, --pareto, --multi-cut, --lp-feasibility, --lp-cuts, --heuristic";
+
+	private String algorithm = "classic";
+	private MasterProblem.Formulation formulation = MasterProblem.Formulation.CLASSIC; // of the minimum up and down times
+	private String generatorFile = "generators.txt";
+	private String snapshot = null;		// binary snapshot of the problem instead of the files, null reads the files
+	private String saveSnapshot = null;	// where the loaded problem is written as a snapshot, null does not write it
+	private String[] columns = null;	// columns of the generator file in order, null takes them from its header
+	private String loadFile = "loads.txt";
+	private int G = 31;
+	private int T = 24;
+	private Long seed = null;			// synthetic instance of the InstanceGenerator instead of the files, null reads the files
+	private int S = 0;					// demand scenarios of the synthetic instance, 0 for the deterministic demand
+	private double shed = 46;
+	private double gap = 0;				// relative gap at which the solve stops, 0 solves to optimality
+	private double tolerance = 1e-7;	// absolute tolerance of the Benders optimality test
+	private double timeLimit = Double.POSITIVE_INFINITY; // in seconds
+	private int maxIterations = Integer.MAX_VALUE; // Benders iterations of the classic algorithm
+	private int threads = 0;			// 0 lets CPLEX decide
+	private String output = null;		// null writes the result to standard out
+	private String progress = null;		// file every iteration is appended to, null does not write them
+	private boolean dispatch = false;
+	private int cutAge = 0;				// master solves a cut may stay slack before it is purged, 0 keeps every cut
+	private int rootRounds = 0;			// rounds on the LP relaxation of the master before the integer solve
+	private double stabilization = 0;	// weight of the core point in the separation point of the classic algorithm
+	private int pipeline = 0;			// incumbents cut off before the classic master restarts, 0 does not pipeline
+	private int poolSolutions = 1;		// distinct master solutions the classic algorithm prices per solve
+	private int cacheSize = 1024;		// commitment patterns whose subproblem results are kept, 0 disables the cache
+	private String scenarioFile = null;	// null for the deterministic demand of the load file
+	private int workers = 0;			// threads solving the scenarios of the classic algorithm, 0 for one per core
+	private boolean pareto = false;		// Pareto-optimal optimality cuts in the classic algorithm
+	private boolean multiCut = false;	// one phi per scenario
+	private boolean lpFeasibility = false; // always solve the feasibility LP instead of checking combinatorially first
+	private boolean lpCuts = false;		// always solve the optimality LP instead of using the merit order
+	private boolean heuristic = false;	// start from the priority list commitment
+
+	/**
+	 * @return true if the arguments are options for a batch run rather than the positional arguments of the interactive run
+	 */
+	public static boolean isBatch(String[] args) {
+		return args.length > 0 && args[0].startsWith("--");
+	}
+
+	public static RunConfig parse(String[] args) {
+		RunConfig config = new RunConfig();
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("--dispatch")) {
+				config.dispatch = true;
+				continue;
+			}
+			if (option.equals("--pareto")) {
+				config.pareto = true;
+				continue;
+			}
+			if (option.equals("--multi-cut")) {
+				config.multiCut = true;
+				continue;
+			}
+			if (option.equals("--lp-feasibility")) {
+				config.lpFeasibility = true;
+				continue;
+			}
+			if (option.equals("--lp-cuts")) {
+				config.lpCuts = true;
+				continue;
+			}
+			if (option.equals("--heuristic")) {
+				config.heuristic = true;
+				continue;
+			}
+			if (i+1 >= args.length) {
+				throw new IllegalArgumentException("Missing value for "+option+"\n"+USAGE);
+			}
+			String value = args[++i];
+			try {
+				switch (option) {
+				case "--algorithm":
+					if (!value.equals("direct") && !value.equals("classic") && !value.equals("extended")) {
+						throw new IllegalArgumentException("Unknown algorithm "+value+"\n"+USAGE);
+					}
+					config.algorithm = value;
+					break;
+				case "--formulation":
+					if (!value.equals("classic") && !value.equals("compact")) {
+						throw new IllegalArgumentException("Unknown formulation "+value+"\n"+USAGE);
+					}
+					config.formulation = MasterProblem.Formulation.valueOf(value.toUpperCase());
+					break;
+				case "--generators":	config.generatorFile = value; break;
+				case "--snapshot":		config.snapshot = value; break;
+				case "--save-snapshot":	config.saveSnapshot = value; break;
+				case "--columns":		config.columns = value.split(","); break;
+				case "--loads":			config.loadFile = value; break;
+				case "--G":				config.G = Integer.parseInt(value); break;
+				case "--T":				config.T = Integer.parseInt(value); break;
+				case "--seed":			config.seed = Long.parseLong(value); break;
+				case "--S":				config.S = Integer.parseInt(value); break;
+				case "--shed":			config.shed = Double.parseDouble(value); break;
+				case "--gap":			config.gap = Double.parseDouble(value); break;
+				case "--tolerance":		config.tolerance = Double.parseDouble(value); break;
+				case "--time-limit":	config.timeLimit = Double.parseDouble(value); break;
+				case "--max-iterations":	config.maxIterations = Integer.parseInt(value); break;
+				case "--threads":		config.threads = Integer.parseInt(value); break;
+				case "--scenarios":		config.scenarioFile = value; break;
+				case "--workers":		config.workers = Integer.parseInt(value); break;
+				case "--root-rounds":	config.rootRounds = Integer.parseInt(value); break;
+				case "--stabilize":		config.stabilization = Double.parseDouble(value); break;
+				case "--pipeline":		config.pipeline = Integer.parseInt(value); break;
+				case "--pool":			config.poolSolutions = Integer.parseInt(value); break;
+				case "--cache":			config.cacheSize = Integer.parseInt(value); break;
+				case "--cut-age":		config.cutAge = Integer.parseInt(value); break;
+				case "--output":		config.output = value; break;
+				case "--progress":		config.progress = value; break;
+				default:
+					throw new IllegalArgumentException("Unknown option "+option+"\n"+USAGE);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid number "+value+" for "+option);
+			}
+		}
+		return config;
+	}
+
+
+	/**
+	 * @return the algorithm to run: direct, classic or extended
+	 */
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * @return the formulation of the minimum up and down times in the master and the direct model
+	 */
+	public MasterProblem.Formulation getFormulation() {
+		return formulation;
+	}
+
+	public String getGeneratorFile() {
+		return generatorFile;
+	}
+
+	/**
+	 * @return the snapshot the problem is loaded from, or null if it is read from the files
+	 */
+	public String getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return the file the loaded problem is written to as a snapshot, or null
+	 */
+	public String getSaveSnapshot() {
+		return saveSnapshot;
+	}
+
+	/**
+	 * @return the columns of the generator file in order, or null to take them from the header of the file
+	 */
+	public String[] getColumns() {
+		return columns;
+	}
+
+	public String getLoadFile() {
+		return loadFile;
+	}
+
+	public int getG() {
+		return G;
+	}
+
+	public int getT() {
+		return T;
+	}
+
+	/**
+	 * @return the seed of the synthetic instance, or null if the instance is read from the files
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @return the number of demand scenarios of the synthetic instance
+	 */
+	public int getS() {
+		return S;
+	}
+
+	public double getShed() {
+		return shed;
+	}
+
+	/**
+	 * @return the relative gap between the bounds at which the solve stops
+	 */
+	public double getGap() {
+		return gap;
+	}
+
+	/**
+	 * @return the absolute tolerance of the Benders optimality test phi >= subproblem value
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * @return the wall clock budget in seconds
+	 */
+	public double getTimeLimit() {
+		return timeLimit;
+	}
+
+	/**
+	 * @return the maximum number of iterations of the classic Bender's Decomposition
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return the file the result record is appended to, or null for standard out
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	/**
+	 * @return the file a record of every iteration is appended to, or null
+	 */
+	public String getProgress() {
+		return progress;
+	}
+
+	/**
+	 * @return the number of consecutive slack master solves after which the classic algorithm purges a cut
+	 */
+	public int getCutAge() {
+		return cutAge;
+	}
+
+	public boolean isDispatch() {
+		return dispatch;
+	}
+
+	public boolean isPareto() {
+		return pareto;
+	}
+
+	/**
+	 * @return the maximum number of rounds on the LP relaxation of the master, 0 skips this phase
+	 */
+	public int getRootRounds() {
+		return rootRounds;
+	}
+
+	public double getStabilization() {
+		return stabilization;
+	}
+
+	public int getPipeline() {
+		return pipeline;
+	}
+
+	public int getPoolSolutions() {
+		return poolSolutions;
+	}
+
+	/**
+	 * @return the number of commitment patterns whose subproblem results are cached
+	 */
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	/**
+	 * @return the file with the demand scenarios, or null for the deterministic problem
+	 */
+	public String getScenarioFile() {
+		return scenarioFile;
+	}
+
+	public int getWorkers() {
+		return workers;
+	}
+
+	public boolean isMultiCut() {
+		return multiCut;
+	}
+
+	/**
+	 * @return true if feasibility is only decided by the feasibility LP, without the combinatorial check
+	 */
+	public boolean isLpFeasibility() {
+		return lpFeasibility;
+	}
+
+	/**
+	 * @return true if optimality cuts always come from the optimality LP, without the merit order shortcut
+	 */
+	public boolean isLpCuts() {
+		return lpCuts;
+	}
+
+	public boolean isHeuristic() {
+		return heuristic;
+	}
+
+}
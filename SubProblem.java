@@ -0,0 +1,77 @@
+import ilog.concert.IloException;
+
+public interface SubProblem {
+	/**
+	 * The second stage of the Generator Commitment Problem for a fixed first stage solution U.
+	 * It is implemented by the CPLEX models FeasibilityProblem and OptimalityProblem and by the pure Java DispatchProblem,
+	 * so the Bender's Decomposition can build its cuts from either of them.
+	 */
+
+	/**
+	 * Sets the first stage solution the next solve is performed for
+	 */
+	public void update(double[][] U) throws IloException;
+
+	/**
+	 * Sets the binary first stage solution the next solve is performed for
+	 */
+	public void update(Commitment U) throws IloException;
+
+	public void solve() throws IloException;
+
+	public double getObjValue() throws IloException;
+
+	/**
+	 * The duals of the last solve in flat arrays, indexed by t-1 for the demand and by (g-1)*T+(t-1) otherwise.
+	 * The arrays are owned by the subproblem and are only valid until it is updated or solved again
+	 */
+	public double[] getDemandDuals() throws IloException;
+
+	public double[] getMinProDuals() throws IloException;
+
+	public double[] getMaxProDuals() throws IloException;
+
+	public double[] getRampUpDuals() throws IloException;
+
+	public double[] getRampDownDuals() throws IloException;
+
+	public double[] getDualsDemandConstraints() throws IloException;
+
+	public double[][] getminProConstraints() throws IloException;
+
+	public double[][] getmaxProConstraints() throws IloException;
+
+	public double[][] getRampUpConstraints() throws IloException;
+
+	public double[][] getRampDownConstraints() throws IloException;
+
+	public double[][] getSolutionP() throws IloException;
+
+	public double[] getSolutionL() throws IloException;
+
+	public void print() throws IloException;
+
+	public void end();
+
+
+	/**
+	 * @return a feasibility subproblem, solved by CPLEX or by the pure Java dispatch solver
+	 */
+	public static SubProblem feasibility(GeneratorProblem gcp, boolean dispatch) throws IloException {
+		if (dispatch) {
+			return new DispatchProblem(gcp, true);
+		}
+		return new FeasibilityProblem(gcp);
+	}
+
+	/**
+	 * @return an optimality subproblem, solved by CPLEX or by the pure Java dispatch solver
+	 */
+	public static SubProblem optimality(GeneratorProblem gcp, boolean dispatch) throws IloException {
+		if (dispatch) {
+			return new DispatchProblem(gcp, false);
+		}
+		return new OptimalityProblem(gcp);
+	}
+
+}
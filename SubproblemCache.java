@@ -0,0 +1,95 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class SubproblemCache {
+	/**
+	 * A bounded cache of second stage results keyed by the commitment U, so a pattern that is checked again
+	 * gives its cut without solving any subproblem. It is shared by the callback threads of the extended BD.
+	 * Every pattern holds one result per scenario: whether the scenario is feasible, its production cost and the cut
+	 * of its subproblem. When it is full, the pattern used least recently is dropped.
+	 */
+
+	private final int scenarios;
+	private final int capacity;
+	private final LinkedHashMap<Commitment, Result[]> results; // in access order, the eldest is the least recently used
+	private long hits, misses;
+
+	public SubproblemCache(GeneratorProblem gcp, int capacity) {
+		this.scenarios = gcp.getnScenarios();
+		this.capacity = capacity;
+		this.results = new LinkedHashMap<Commitment, Result[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Commitment, Result[]> eldest) {
+				return size() > SubproblemCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * @return the result of scenario s for the pattern, or null if it is not known
+	 */
+	public synchronized Result get(Commitment U, int s) {
+		Result[] entry = results.get(U);
+		if (entry == null || entry[s-1] == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry[s-1];
+	}
+
+	public synchronized void put(Commitment U, int s, Result result) {
+		if (capacity <= 0) {
+			return;
+		}
+		Result[] entry = results.get(U);
+		if (entry == null) {
+			entry = new Result[scenarios];
+			results.put(U, entry);
+		}
+		entry[s-1] = result;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return the number of patterns in the cache
+	 */
+	public synchronized int size() {
+		return results.size();
+	}
+
+
+	public static class Result {
+		private final boolean feasible;
+		private final double objValue;	// production cost, only meaningful if feasible
+		private final Cut cut;			// feasibility cut or optimality cut of the scenario, without a phi term
+
+		public Result(boolean feasible, double objValue, Cut cut) {
+			this.feasible = feasible;
+			this.objValue = objValue;
+			this.cut = cut;
+		}
+
+		public boolean isFeasible() {
+			return feasible;
+		}
+
+		public double getObjValue() {
+			return objValue;
+		}
+
+		public Cut getCut() {
+			return cut;
+		}
+	}
+
+}
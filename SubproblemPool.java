@@ -0,0 +1,125 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ilog.concert.IloException;
+
+public class SubproblemPool {
+	/**
+	 * A pool of pre-built feasibility checks, merit order cuts and feasibility and optimality subproblems for the
+	 * lazy constraint callback.
+	 * CPLEX calls the callback from all its worker threads, so every call borrows its own set of the four, updates
+	 * them for the node solution and returns them afterwards. Sets are only created when the pool runs dry, and all
+	 * of them are ended together with the pool.
+	 */
+
+	private final GeneratorProblem gcp;
+	private final boolean dispatch;  // pure Java dispatch solver instead of CPLEX
+	private final ConcurrentLinkedQueue<Entry> idle;  // sets ready to be borrowed
+	private final ConcurrentLinkedQueue<Entry> all;   // every set created, for ending them
+	private final AtomicInteger created;
+	private final AtomicInteger reused;
+
+	public SubproblemPool(GeneratorProblem gcp, int size, boolean dispatch) throws IloException {
+		this.gcp = gcp;
+		this.dispatch = dispatch;
+		this.idle = new ConcurrentLinkedQueue<Entry>();
+		this.all = new ConcurrentLinkedQueue<Entry>();
+		this.created = new AtomicInteger();
+		this.reused = new AtomicInteger();
+
+		// Building one set per thread up front, so the callback does not pay for model construction
+		for (int i=1; i<=size; i++) {
+			idle.offer(create());
+		}
+	}
+
+	private Entry create() throws IloException {
+		Entry entry = new Entry(new FeasibilityCheck(gcp), new MeritOrderCut(gcp),
+				SubProblem.feasibility(gcp, dispatch), SubProblem.optimality(gcp, dispatch));
+		all.offer(entry);
+		created.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * @return a set of subproblems which is only used by the calling thread until it is released
+	 */
+	public Entry borrow() throws IloException {
+		Entry entry = idle.poll();
+		if (entry == null) {
+			entry = create();
+		}
+		// Sets built up front are not reused on their first borrow, only once they came back through release
+		if (entry.used) {
+			reused.incrementAndGet();
+		}
+		entry.used = true;
+		return entry;
+	}
+
+	/**
+	 * Returns a borrowed set to the pool
+	 */
+	public void release(Entry entry) {
+		idle.offer(entry);
+	}
+
+	/**
+	 * @return the number of subproblem sets created by the pool
+	 */
+	public int getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * @return the number of times a set was handed out again after it was released
+	 */
+	public int getReused() {
+		return reused.get();
+	}
+
+	/**
+	 * Ends every subproblem created by the pool, none of them may be borrowed at this point
+	 */
+	public void end() {
+		Entry entry;
+		while ((entry = all.poll()) != null) {
+			entry.getFeasibilityProblem().end();
+			entry.getOptimalityProblem().end();
+		}
+		idle.clear();
+	}
+
+
+	public static class Entry {
+		private final FeasibilityCheck check;
+		private final MeritOrderCut merit;
+		private final SubProblem fsp;
+		private final SubProblem osp;
+		private boolean used;  // borrowed before, only touched by the borrowing thread
+
+		private Entry(FeasibilityCheck check, MeritOrderCut merit, SubProblem fsp, SubProblem osp) {
+			this.check = check;
+			this.merit = merit;
+			this.fsp = fsp;
+			this.osp = osp;
+		}
+
+		public FeasibilityCheck getFeasibilityCheck() {
+			return check;
+		}
+
+		public MeritOrderCut getMeritOrderCut() {
+			return merit;
+		}
+
+		public SubProblem getFeasibilityProblem() {
+			return fsp;
+		}
+
+		public SubProblem getOptimalityProblem() {
+			return osp;
+		}
+	}
+
+}
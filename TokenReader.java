@@ -0,0 +1,210 @@
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+public class TokenReader implements Closeable {
+	/**
+	 * A buffered tokenizer for the whitespace separated data files, in place of Scanner. Tokens are read into a reused
+	 * character array and numbers are parsed from it directly, so reading a plain decimal allocates nothing. Anything
+	 * else, e.g. an exponent or more than 15 significant digits, is left to Double.parseDouble, so every number is read
+	 * exactly as before. Numbers always use a decimal point, whatever the default locale.
+	 * Every error names the file and the line it was found on.
+	 */
+
+	private static final double[] POWERS = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+			1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22}; // the powers of ten that are exact doubles
+
+	private final String fileName;
+	private final Reader in;
+	private final char[] buffer = new char[1 << 16];
+	private int position, limit;
+	private char[] token = new char[32];	// the last token read
+	private int length;
+	private int line = 1;
+
+	public TokenReader(String fileName) throws FileNotFoundException {
+		this.fileName = fileName;
+		this.in = new FileReader(fileName);
+	}
+
+	// The next character without consuming it, -1 at the end of the file
+	private int peek() throws IOException {
+		if (position == limit) {
+			limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+			position = 0;
+			if (limit == 0) {
+				return -1;
+			}
+		}
+		return buffer[position];
+	}
+
+	private void consume() {
+		if (buffer[position++] == '\n') {
+			line++;
+		}
+	}
+
+	/**
+	 * @return whether another token follows, on this line or a later one
+	 */
+	public boolean hasNext() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && Character.isWhitespace(c)) {
+			consume();
+		}
+		return c != -1;
+	}
+
+	/**
+	 * @return whether another token follows on the current line
+	 */
+	public boolean hasNextOnLine() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && c != '\n' && Character.isWhitespace(c)) {
+			consume();
+		}
+		return c != -1 && c != '\n';
+	}
+
+	/**
+	 * Skips the rest of the current line
+	 */
+	public void skipLine() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && c != '\n') {
+			consume();
+		}
+		if (c == '\n') {
+			consume();
+		}
+	}
+
+	/**
+	 * @return the rest of the current line, e.g. a title or a header
+	 */
+	public String nextLine() throws IOException {
+		StringBuilder text = new StringBuilder();
+		int c;
+		while ((c = peek()) != -1 && c != '\n') {
+			if (c != '\r') {
+				text.append((char) c);
+			}
+			consume();
+		}
+		if (c == '\n') {
+			consume();
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @param what the value that is expected, for the error message
+	 */
+	public String next(String what) throws IOException {
+		readToken(what);
+		return new String(token, 0, length);
+	}
+
+	public double nextDouble(String what) throws IOException {
+		readToken(what);
+		double value = parse();
+		if (Double.isNaN(value)) {
+			try {
+				value = Double.parseDouble(new String(token, 0, length));
+			} catch (NumberFormatException e) {
+				throw error("expected a number for "+what+" but found '"+new String(token, 0, length)+"'");
+			}
+		}
+		return value;
+	}
+
+	public int nextInt(String what) throws IOException {
+		readToken(what);
+		int k = token[0] == '-' || token[0] == '+' ? 1 : 0;
+		long value = 0;
+		for (int i = k; i < length; i++) {
+			char c = token[i];
+			if (c < '0' || c > '9' || value > Integer.MAX_VALUE) {
+				throw error("expected a whole number for "+what+" but found '"+new String(token, 0, length)+"'");
+			}
+			value = 10*value + (c - '0');
+		}
+		if (k == length || value > Integer.MAX_VALUE) {
+			throw error("expected a whole number for "+what+" but found '"+new String(token, 0, length)+"'");
+		}
+		return (int) (token[0] == '-' ? -value : value);
+	}
+
+	private void readToken(String what) throws IOException {
+		if (!hasNext()) {
+			throw error("expected "+what+" but the file ends");
+		}
+		length = 0;
+		int c;
+		while ((c = peek()) != -1 && !Character.isWhitespace(c)) {
+			if (length == token.length) {
+				token = Arrays.copyOf(token, 2*length);
+			}
+			token[length++] = (char) c;
+			position++;
+		}
+	}
+
+	// Plain decimals with at most 15 significant digits, like -12.50, are a long below 2^53 divided by an exact power
+	// of ten, which rounds correctly as parseDouble does. NaN leaves anything else to parseDouble
+	private double parse() {
+		int k = token[0] == '-' || token[0] == '+' ? 1 : 0;
+		long mantissa = 0;
+		int digits = 0, decimals = 0;
+		boolean point = false, digit = false;
+		for (; k < length; k++) {
+			char c = token[k];
+			if (c >= '0' && c <= '9') {
+				mantissa = 10*mantissa + (c - '0');
+				digit = true;
+				if (mantissa != 0) {
+					digits++;
+				}
+				if (point) {
+					decimals++;
+				}
+				if (digits > 15 || decimals >= POWERS.length) {
+					return Double.NaN;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				return Double.NaN;
+			}
+		}
+		if (!digit) {
+			return Double.NaN;
+		}
+		double value = mantissa/POWERS[decimals];
+		return token[0] == '-' ? -value : value;
+	}
+
+	/**
+	 * @return the line the reader is on, from 1
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return an exception for a format error at the current line
+	 */
+	public IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(fileName+", line "+line+": "+message);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkMain {
+	/**
+	 * Runs the benchmarks with the usual JMH command line options. Without CPLEX, i.e. without its native library or a
+	 * license, the benchmarks that need it are excluded and the rest still run, rather than every CPLEX benchmark failing
+	 * in its setup.
+	 */
+
+	private static final Class<?>[] NEEDS_CPLEX = {ModelBuildBenchmark.class, SubproblemBenchmark.class, CutBenchmark.class};
+
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions command = new CommandLineOptions(args);
+		if (command.shouldHelp()) {
+			command.showHelp();
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(command);
+		if (!Solver.isCplexAvailable()) {
+			System.err.println("CPLEX is not available, skipping the benchmarks that need it");
+			for (Class<?> benchmark : NEEDS_CPLEX) {
+				options.exclude(Pattern.quote(benchmark.getName()+"."));
+			}
+		}
+		new Runner(options.build()).run();
+	}
+
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CutBenchmark {
+	/**
+	 * Adding an optimality cut to the master with addOptimalityCut, including the duplicate check of the cut pool.
+	 * The cuts are dense in u like the cuts of the LP subproblems, and every one has its own constant so none of them
+	 * is a duplicate. The master is built again for every iteration, so it holds a comparable number of cuts in each.
+	 */
+
+	@Param({"10", "31", "100"})
+	public int G;
+
+	@Param({"24", "168"})
+	public int T;
+
+	private Instances instance;
+	private Object gcp;
+	private Object master;
+	private double[] coefs;
+	private int added;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Solver.requireCplex();
+		instance = Instances.write(G, T, 1);
+		gcp = instance.load(G, T);
+		Random random = new Random(1);
+		coefs = new double[G*T];
+		for (int k=1; k <= coefs.length; k++) {
+			coefs[k-1] = -100*random.nextDouble();
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void buildMaster() {
+		master = Solver.master(gcp);
+		added = 0;
+	}
+
+	@TearDown(Level.Iteration)
+	public void endMaster() {
+		Solver.endMaster(master);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		instance.delete();
+	}
+
+	@Benchmark
+	public void addOptimalityCut() {
+		added++;
+		Solver.addOptimalityCut(master, Solver.cut(1000 + added, coefs));
+	}
+
+}
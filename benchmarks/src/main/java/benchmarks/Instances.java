@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+final class Instances {
+	/**
+	 * Synthetic instances of the InstanceGenerator in temporary files, so the benchmarks do not depend on data files
+	 * and the loaders can be measured on them. Every instance is also written as a binary snapshot. The same G, T and
+	 * seed always give the same files.
+	 */
+
+	static final double SHED_COST = 46;
+
+	final Path directory;
+	final String generatorFile;
+	final String loadFile;
+	final String snapshotFile;
+
+	private Instances(Path directory) {
+		this.directory = directory;
+		this.generatorFile = directory.resolve("generators.txt").toString();
+		this.loadFile = directory.resolve("loads.txt").toString();
+		this.snapshotFile = directory.resolve("problem.snapshot").toString();
+	}
+
+	static Instances write(int G, int T, long seed) throws IOException {
+		Instances instance = new Instances(Files.createTempDirectory("benders-bench"));
+		Solver.writeInstance(seed, G, T, instance.generatorFile, instance.loadFile);
+		Solver.writeSnapshot(instance.load(G, T), instance.snapshotFile);
+		return instance;
+	}
+
+	/**
+	 * @return the GeneratorProblem of the instance
+	 */
+	Object load(int G, int T) {
+		return Solver.problem(G, loadFile, generatorFile, T, SHED_COST);
+	}
+
+	void delete() throws IOException {
+		Files.deleteIfExists(Path.of(generatorFile));
+		Files.deleteIfExists(Path.of(loadFile));
+		Files.deleteIfExists(Path.of(snapshotFile));
+		Files.deleteIfExists(directory);
+	}
+
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+	/**
+	 * Loading a GeneratorProblem from the generator and load files, and from the binary snapshot of the same instance.
+	 * Needs no CPLEX. The loader is quiet by default, so this is the tokenizing and parsing of the files alone.
+	 */
+
+	@Param({"10", "31", "100"})
+	public int G;
+
+	@Param({"24", "168"})
+	public int T;
+
+	private Instances instance;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		instance = Instances.write(G, T, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		instance.delete();
+	}
+
+	@Benchmark
+	public Object load() {
+		return Solver.problem(G, instance.loadFile, instance.generatorFile, T, Instances.SHED_COST);
+	}
+
+	@Benchmark
+	public Object loadSnapshot() {
+		return Solver.readSnapshot(instance.snapshotFile);
+	}
+
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBuildBenchmark {
+	/**
+	 * Building the CPLEX models: the master and the optimality and feasibility subproblems of one scenario.
+	 * Every invocation builds one model, which is ended after it outside the measurement.
+	 */
+
+	@Param({"10", "31", "100"})
+	public int G;
+
+	@Param({"24", "168"})
+	public int T;
+
+	private Instances instance;
+	private Object gcp;
+	private Object master;
+	private Object subProblem;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Solver.requireCplex();
+		instance = Instances.write(G, T, 1);
+		gcp = instance.load(G, T);
+	}
+
+	@TearDown(Level.Invocation)
+	public void end() {
+		if (master != null) {
+			Solver.endMaster(master);
+			master = null;
+		}
+		if (subProblem != null) {
+			Solver.endSubProblem(subProblem);
+			subProblem = null;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		instance.delete();
+	}
+
+	@Benchmark
+	public Object masterProblem() {
+		return master = Solver.master(gcp);
+	}
+
+	@Benchmark
+	public Object optimalityProblem() {
+		return subProblem = Solver.optimality(gcp);
+	}
+
+	@Benchmark
+	public Object feasibilityProblem() {
+		return subProblem = Solver.feasibility(gcp);
+	}
+
+}
@@ -0,0 +1,220 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+final class Solver {
+	/**
+	 * Access to the classes of the solver for the benchmarks. The solver lives in the default package, which a class
+	 * in a package cannot import, and JMH does not accept benchmarks in the default package. So the constructors and
+	 * methods are looked up once as method handles and the objects of the solver are passed around as Object.
+	 * The cost of a call through a handle is far below that of anything the benchmarks measure.
+	 */
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+	private static final Class<?> GENERATOR_PROBLEM = type("GeneratorProblem");
+	private static final Class<?> COMMITMENT = type("Commitment");
+	private static final Class<?> SUB_PROBLEM = type("SubProblem");
+	private static final Class<?> CUT = type("Cut");
+
+	private static final MethodHandle PROBLEM = constructor(GENERATOR_PROBLEM, int.class, String.class, String.class, int.class, double.class);
+	private static final MethodHandle READ_SNAPSHOT = staticMethod(GENERATOR_PROBLEM, "readSnapshot", GENERATOR_PROBLEM, String.class);
+	private static final MethodHandle WRITE_SNAPSHOT = method(GENERATOR_PROBLEM, "writeSnapshot", void.class, String.class);
+	private static final MethodHandle MASTER = constructor(type("MasterProblem"), GENERATOR_PROBLEM);
+	private static final MethodHandle OPTIMALITY = constructor(type("OptimalityProblem"), GENERATOR_PROBLEM);
+	private static final MethodHandle FEASIBILITY = constructor(type("FeasibilityProblem"), GENERATOR_PROBLEM);
+	private static final MethodHandle PRIORITY_LIST = constructor(type("PriorityList"), GENERATOR_PROBLEM);
+	private static final MethodHandle CHECK = constructor(type("FeasibilityCheck"), GENERATOR_PROBLEM);
+	private static final MethodHandle GENERATOR = constructor(type("InstanceGenerator"), long.class);
+	private static final MethodHandle WRITE = method(type("InstanceGenerator"), "write", void.class, int.class, int.class, int.class,
+			String.class, String.class, String.class);
+	private static final MethodHandle NEW_CUT = constructor(CUT, double.class, double[].class, int.class);
+	private static final MethodHandle COMMIT = method(type("PriorityList"), "commit", COMMITMENT);
+	private static final MethodHandle ROUND = method(type("PriorityList"), "round", COMMITMENT, double[].class);
+	private static final MethodHandle IS_FEASIBLE = method(type("FeasibilityCheck"), "check", type("FeasibilityCheck$Result"), COMMITMENT);
+	private static final MethodHandle TO_ARRAY = method(COMMITMENT, "toArray", double[][].class);
+	private static final MethodHandle UPDATE = method(SUB_PROBLEM, "update", void.class, COMMITMENT);
+	private static final MethodHandle SOLVE = method(SUB_PROBLEM, "solve", void.class);
+	private static final MethodHandle OBJ_VALUE = method(SUB_PROBLEM, "getObjValue", double.class);
+	private static final MethodHandle[] DUALS = {
+			method(SUB_PROBLEM, "getDemandDuals", double[].class),
+			method(SUB_PROBLEM, "getMinProDuals", double[].class),
+			method(SUB_PROBLEM, "getMaxProDuals", double[].class),
+			method(SUB_PROBLEM, "getRampUpDuals", double[].class),
+			method(SUB_PROBLEM, "getRampDownDuals", double[].class)};
+	private static final MethodHandle END_SUB_PROBLEM = method(SUB_PROBLEM, "end", void.class);
+	private static final MethodHandle END_MASTER = method(type("MasterProblem"), "end", void.class);
+	private static final MethodHandle ADD_OPTIMALITY_CUT = method(type("MasterProblem"), "addOptimalityCut", boolean.class, Array.newInstance(CUT, 0).getClass());
+
+	private Solver() {
+	}
+
+	/**
+	 * @return whether CPLEX can create a model, i.e. its jar, its native library and a license are available
+	 */
+	static boolean isCplexAvailable() {
+		try {
+			new IloCplex().end();
+			return true;
+		} catch (IloException | LinkageError e) {
+			return false;
+		}
+	}
+
+	static void requireCplex() {
+		if (!isCplexAvailable()) {
+			throw new IllegalStateException("CPLEX is not available, run the benchmarks with BenchmarkMain to skip the ones that need it");
+		}
+	}
+
+	static Object problem(int G, String loadFile, String generatorFile, int T, double shedCost) {
+		return call(PROBLEM, G, loadFile, generatorFile, T, shedCost);
+	}
+
+	static Object readSnapshot(String fileName) {
+		return call(READ_SNAPSHOT, fileName);
+	}
+
+	static void writeSnapshot(Object gcp, String fileName) {
+		call(WRITE_SNAPSHOT, gcp, fileName);
+	}
+
+	/**
+	 * Writes the deterministic synthetic instance of the InstanceGenerator with the seed
+	 */
+	static void writeInstance(long seed, int G, int T, String generatorFile, String loadFile) {
+		call(WRITE, call(GENERATOR, seed), G, T, 0, generatorFile, loadFile, null);
+	}
+
+	static Object master(Object gcp) {
+		return call(MASTER, gcp);
+	}
+
+	static Object optimality(Object gcp) {
+		return call(OPTIMALITY, gcp);
+	}
+
+	static Object feasibility(Object gcp) {
+		return call(FEASIBILITY, gcp);
+	}
+
+	/**
+	 * @return the priority list commitment followed by up to n-1 feasible commitments that switch on more hours
+	 */
+	static Object[] commitments(Object gcp, int n, long seed) {
+		Object list = call(PRIORITY_LIST, gcp);
+		Object check = call(CHECK, gcp);
+		Object first = call(COMMIT, list);
+		double[][] rows = (double[][]) call(TO_ARRAY, first);
+		Random random = new Random(seed);
+		List<Object> found = new ArrayList<Object>();
+		found.add(first);
+		int G = rows.length;
+		int T = rows[0].length;
+		for (int k=1; k <= 50*n && found.size() < n; k++) {
+			// the first commitment with one generator switched on for a few more hours
+			double[] values = new double[G*T];
+			for (int g=1; g <= G; g++) {
+				for (int t=1; t <= T; t++) {
+					values[(g-1)*T+t-1] = rows[g-1][t-1];
+				}
+			}
+			int g = 1 + random.nextInt(G);
+			int from = 1 + random.nextInt(T);
+			for (int t = from; t <= Math.min(from+3, T); t++) {
+				values[(g-1)*T+t-1] = 1;
+			}
+			Object U = call(ROUND, list, values);
+			if (U != null && !found.contains(U) && call(IS_FEASIBLE, check, U).toString().equals("FEASIBLE")) {
+				found.add(U);
+			}
+		}
+		return found.toArray();
+	}
+
+	static double solve(Object sp, Object U) {
+		call(UPDATE, sp, U);
+		call(SOLVE, sp);
+		return (double) call(OBJ_VALUE, sp);
+	}
+
+	/**
+	 * @return the duals of the last solve, demand, minimum and maximum production and ramping up and down
+	 */
+	static double[][] duals(Object sp) {
+		double[][] duals = new double[DUALS.length][];
+		for (int k=1; k <= DUALS.length; k++) {
+			duals[k-1] = (double[]) call(DUALS[k-1], sp);
+		}
+		return duals;
+	}
+
+	static Object cut(double constant, double[] coefs) {
+		return call(NEW_CUT, constant, coefs, -1);
+	}
+
+	static void addOptimalityCut(Object mp, Object cut) {
+		Object cuts = Array.newInstance(CUT, 1);
+		Array.set(cuts, 0, cut);
+		call(ADD_OPTIMALITY_CUT, mp, cuts);
+	}
+
+	static void endMaster(Object mp) {
+		call(END_MASTER, mp);
+	}
+
+	static void endSubProblem(Object sp) {
+		call(END_SUB_PROBLEM, sp);
+	}
+
+	private static Class<?> type(String name) {
+		try {
+			return Class.forName(name, false, Solver.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("The solver is not on the class path, install it with mvn install first", e);
+		}
+	}
+
+	private static MethodHandle constructor(Class<?> type, Class<?>... parameters) {
+		try {
+			return LOOKUP.findConstructor(type, MethodType.methodType(void.class, parameters));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle method(Class<?> type, String name, Class<?> result, Class<?>... parameters) {
+		try {
+			return LOOKUP.findVirtual(type, name, MethodType.methodType(result, parameters));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MethodHandle staticMethod(Class<?> type, String name, Class<?> result, Class<?>... parameters) {
+		try {
+			return LOOKUP.findStatic(type, name, MethodType.methodType(result, parameters));
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Object call(MethodHandle handle, Object... arguments) {
+		try {
+			return handle.invokeWithArguments(arguments);
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubproblemBenchmark {
+	/**
+	 * A single solve of the optimality and of the feasibility subproblem, with the update to a new commitment and the
+	 * extraction of all duals, i.e. everything a cut needs. Every invocation moves on to the next of a few feasible
+	 * commitments, so CPLEX always has to reoptimise from the basis of the previous one, as in the Benders loop.
+	 */
+
+	private static final int COMMITMENTS = 8;
+
+	@Param({"10", "31", "100"})
+	public int G;
+
+	@Param({"24", "168"})
+	public int T;
+
+	private Instances instance;
+	private Object optimality;
+	private Object feasibility;
+	private Object[] commitments;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		Solver.requireCplex();
+		instance = Instances.write(G, T, 1);
+		Object gcp = instance.load(G, T);
+		optimality = Solver.optimality(gcp);
+		feasibility = Solver.feasibility(gcp);
+		commitments = Solver.commitments(gcp, COMMITMENTS, 1);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Solver.endSubProblem(optimality);
+		Solver.endSubProblem(feasibility);
+		instance.delete();
+	}
+
+	@Benchmark
+	public void optimalitySolve(Blackhole bh) {
+		bh.consume(Solver.solve(optimality, commitments[next++ % commitments.length]));
+		bh.consume(Solver.duals(optimality));
+	}
+
+	@Benchmark
+	public void feasibilitySolve(Blackhole bh) {
+		bh.consume(Solver.solve(feasibility, commitments[next++ % commitments.length]));
+		bh.consume(Solver.duals(feasibility));
+	}
+
+}